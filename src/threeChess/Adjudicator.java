@@ -0,0 +1,19 @@
+package threeChess;
+
+/**
+ * An interface for rules that end a game early, such as a limit on the number of moves.
+ * A board with an adjudicator (see {@link Board#setAdjudicator(Adjudicator)}) consults it after every move.
+ * If the adjudicator names a loser, the game is over and the result is decided 
+ * in the same way as when a player runs out of time:
+ * the named player loses and the other player with the highest score wins.
+ * Adjudicators are shared by cloned boards, so they should not keep any state of their own.
+ * **/
+public interface Adjudicator{
+
+  /**
+   * Decides whether a game should end, after a move has been made.
+   * @param board the board after the move, which must not be changed. The game is not over.
+   * @return the player who loses the game, or null if the game goes on.
+   * **/
+  Colour adjudicate(Board board);
+}
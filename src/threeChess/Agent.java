@@ -33,6 +33,8 @@ public abstract class Agent implements Runnable{
    * the history of the game and whose turn it is. 
    * They respond with a move represented by a pair (two element array) of positions: 
    * the start and the end position of the move.
+   * The board is a read only snapshot (see {@link Board#snapshot()}), which the agent may keep and share between threads,
+   * but not change: agents that search ahead should play moves on {@link Board#mutableCopy()}.
    * @param board The representation of the game state.
    * @return a two element array of Position objects, where the first element is the 
    * current position of the piece to be moved, and the second element is the 
@@ -53,6 +55,36 @@ public abstract class Agent implements Runnable{
    * **/
   public abstract void finalBoard(Board finalBoard);
 
+  /**
+   * Called when a game the agent plays in is about to start, before any moves are requested.
+   * An agent playing more than one colour in the same game is told once for each colour.
+   * Together with {@link #onMove(Position,Position,Colour)} and {@link #onGameEnd(Board,int[])}
+   * this lets an agent follow the game as it happens, rather than reading it from the board each turn.
+   * The default implementation does nothing.
+   * @param colour the colour the agent plays.
+   * @param board a read only snapshot of the board the game starts from.
+   * **/
+  public void onGameStart(Colour colour, Board board){}
+
+  /**
+   * Called after every move of a game the agent plays in, including its own moves, in the order they are played.
+   * The default implementation does nothing.
+   * @param start the position the piece moved from.
+   * @param end the position the piece moved to.
+   * @param colour the colour of the player who moved.
+   * **/
+  public void onMove(Position start, Position end, Colour colour){}
+
+  /**
+   * Called when a game the agent plays in is over, however it ended.
+   * The default implementation passes the board on to {@link #finalBoard(Board)}.
+   * @param board a read only snapshot of the final board.
+   * @param scores the scores for blue, green and red, in that order, as returned by the game.
+   * **/
+  public void onGameEnd(Board board, int[] scores){
+    finalBoard(board);
+  }
+
   /**
    * For running threaded games.
    * **/
@@ -0,0 +1,233 @@
+package threeChess;
+
+import java.util.*;
+
+import threeChess.agents.Agent22704805;
+
+/**
+ * Microbenchmarks for the hot paths of the rules engine and the Monte Carlo agent,
+ * run over a fixed corpus of opening, middlegame and endgame positions.
+ * The corpus is built by seeded random play, so every run measures the same positions.
+ * Each benchmark is warmed up before it is measured, so the JIT has compiled it,
+ * and is measured over several timed iterations, reporting the mean and standard deviation
+ * of the time per operation, where an operation covers one position of the corpus.
+ * Results are accumulated into a sink that is printed at the end, so the work cannot be optimised away.
+ * **/
+public final class Benchmark {
+
+  /** Number of positions in each phase of the corpus **/
+  private static final int CORPUS_SIZE = 16;
+  /** Moves played from the initial position for the opening and middlegame positions **/
+  private static final int OPENING_MOVES = 6, MIDDLEGAME_MOVES = 60;
+  /** Endgame positions have at most this many pieces on the board **/
+  private static final int ENDGAME_PIECES = 18;
+  /** The phases of the corpus **/
+  private static final String[] PHASES = {"opening","middlegame","endgame"};
+  /** Cached copy of the directions **/
+  private static final Direction[] DIRECTIONS = Direction.values();
+
+  /** Accumulates benchmark results so that the JIT cannot discard the work being measured **/
+  private static long sink;
+
+  private Benchmark(){}
+
+  /** A benchmarked operation on one position of the corpus. **/
+  private static abstract class Case{
+    /** The name the case is reported under **/
+    final String name;
+    Case(String name){this.name = name;}
+    /** Performs the operation on a position, which must be left unchanged, and returns a value for the sink. **/
+    abstract long run(Board board) throws Exception;
+  }
+
+  /**
+   * The referee's work on each turn besides checking the move: handing the agent a view of the board,
+   * then playing a timed move on its own board, which is undone again to leave the position unchanged.
+   * **/
+  private static abstract class RefereeTurn extends Case{
+    /** The move played in each position, found once so that the legal moves are not part of the measurement **/
+    final Map<Board,Integer> moves = new IdentityHashMap<>();
+    RefereeTurn(String name){super(name);}
+    /** @return the view of the board the agent is given. **/
+    abstract Board view(Board board) throws Exception;
+    long run(Board board) throws Exception{
+      Integer move = moves.get(board);
+      if(move==null) moves.put(board,move = firstMove(board));
+      Board view = view(board);
+      board.unmakeMove(board.makeMove(Move.getStart(move),Move.getEnd(move),1));
+      return view.getMoveCount();
+    }
+  }
+
+  /** @return the benchmarked operations. **/
+  private static Case[] cases(){
+    final Agent22704805 agent = new Agent22704805();
+    return new Case[]{
+      new Case("Board.clone"){
+        long run(Board board) throws Exception{
+          return ((Board) board.clone()).getMoveCount();
+        }
+      },
+      new Case("Board.snapshot"){
+        long run(Board board){
+          return board.snapshot().getMoveCount();
+        }
+      },
+      new RefereeTurn("Referee turn (clone, move, undo)"){
+        Board view(Board board) throws Exception{
+          return (Board) board.clone();
+        }
+      },
+      new RefereeTurn("Referee turn (snapshot, move, undo)"){
+        Board view(Board board){
+          return board.snapshot();
+        }
+      },
+      new Case("Board.isLegalMove (own pieces x 96 ends)"){
+        long run(Board board){
+          long count = 0;
+          Colour turn = board.getTurn();
+          for(int i = 0; i<board.getPieceCount(turn); i++){
+            Position start = board.getPiecePosition(turn,i);
+            for(int end = 0; end<Board.SIZE; end++) if(board.isLegalMove(start,Position.get(end))) count++;
+          }
+          return count;
+        }
+      },
+      new Case("Board.move (on a clone)"){
+        long run(Board board) throws Exception{
+          Board copy = (Board) board.clone();
+          int move = firstMove(copy);
+          copy.move(Move.getStart(move),Move.getEnd(move));
+          return copy.getMoveCount();
+        }
+      },
+      new Case("Board.makeMove/unmakeMove (all moves)"){
+        final int[] moves = new int[Move.MAX_MOVES];
+        long run(Board board) throws Exception{
+          long key = 0;
+          int count = board.generateLegalMoves(moves);
+          for(int i = 0; i<count; i++){
+            long undo = board.makeMove(moves[i]);
+            key ^= board.getKey();
+            board.unmakeMove(undo);
+          }
+          return key;
+        }
+      },
+      new Case("Board.getPositions"){
+        long run(Board board){
+          return board.getPositions(board.getTurn()).size();
+        }
+      },
+      new Case("Position.neighbour (96 x 4)"){
+        long run(Board board){
+          long count = 0;
+          for(int i = 0; i<Board.SIZE; i++){
+            Position p = Position.get(i);
+            for(Direction d: DIRECTIONS){
+              try{
+                count += p.neighbour(d).ordinal();
+              }catch(ImpossiblePositionException e){count--;}
+            }
+          }
+          return count;
+        }
+      },
+      new Case("Agent22704805.getLegalMovesForPosition (own pieces)"){
+        long run(Board board){
+          long count = 0;
+          Colour turn = board.getTurn();
+          for(int i = 0; i<board.getPieceCount(turn); i++)
+            count += Agent22704805.getLegalMovesForPosition(board.getPiecePosition(turn,i),board).size();
+          return count;
+        }
+      },
+      new Case("Agent22704805.simulateGame"){
+        long run(Board board){
+          Colour winner = agent.simulateGame(board);
+          return winner==null?-1:winner.ordinal();
+        }
+      }
+    };
+  }
+
+  /**
+   * Builds the positions of one phase of the corpus by seeded random play from the initial position.
+   * Games that end before reaching the phase are replaced by the next seed.
+   * @param phase the index of the phase in PHASES.
+   * @return the positions of the phase.
+   * **/
+  private static Board[] corpus(int phase) throws ImpossiblePositionException{
+    Board[] positions = new Board[CORPUS_SIZE];
+    int[] moves = new int[Move.MAX_MOVES];
+    for(int seed = 0, n = 0; n<CORPUS_SIZE; seed++){
+      Random random = new Random(1000*phase+seed);
+      Board board = new Board(0);
+      while(!board.gameOver()){
+        if(phase==0 && board.getMoveCount()==OPENING_MOVES) break;
+        if(phase==1 && board.getMoveCount()==MIDDLEGAME_MOVES) break;
+        if(phase==2 && pieces(board)<=ENDGAME_PIECES) break;
+        int count = board.generateLegalMoves(moves);
+        if(count==0) break;
+        board.makeMove(moves[random.nextInt(count)]);
+      }
+      if(!board.gameOver() && board.generateLegalMoves(moves)>0) positions[n++] = board;
+    }
+    return positions;
+  }
+
+  /** @return the number of pieces on the board. **/
+  private static int pieces(Board board){
+    int count = 0;
+    for(Colour c: Colour.values()) count += board.getPieceCount(c);
+    return count;
+  }
+
+  /** @return the first legal move in a position, which has at least one. **/
+  private static int firstMove(Board board){
+    int[] moves = new int[Move.MAX_MOVES];
+    board.generateLegalMoves(moves);
+    return moves[0];
+  }
+
+  /**
+   * Runs a case over the positions repeatedly for about the given time.
+   * @return the mean time per operation in nanoseconds.
+   * **/
+  private static double iteration(Case c, Board[] positions, long millis) throws Exception{
+    long ops = 0, start = System.nanoTime(), deadline = start+millis*1000000L, now;
+    do{
+      for(Board board: positions) sink += c.run(board);
+      ops += positions.length;
+    }while((now = System.nanoTime())<deadline);
+    return (now-start)/(double) ops;
+  }
+
+  /**
+   * Runs the benchmarks and prints a table of results.
+   * Usage: java threeChess.Benchmark [filter] [iterations] [millis]
+   * where filter is part of the name of the cases to run (all by default),
+   * and each case is warmed up, then measured, with the given number of iterations of the given length (5 of 500ms by default).
+   * **/
+  public static void main(String[] args) throws Exception{
+    String filter = args.length>0?args[0]:"";
+    int iterations = args.length>1?Integer.parseInt(args[1]):5;
+    long millis = args.length>2?Long.parseLong(args[2]):500;
+    Board[][] corpus = new Board[PHASES.length][];
+    for(int p = 0; p<PHASES.length; p++) corpus[p] = corpus(p);
+    System.out.println(String.format("%-52s %-10s %14s %12s","Benchmark","Phase","ns/op","stddev"));
+    for(Case c: cases()){
+      if(!c.name.contains(filter)) continue;
+      for(int p = 0; p<PHASES.length; p++){
+        for(int i = 0; i<iterations; i++) iteration(c,corpus[p],millis);//warm up
+        double[] times = new double[iterations];
+        double mean = 0, variance = 0;
+        for(int i = 0; i<iterations; i++) mean += (times[i] = iteration(c,corpus[p],millis))/iterations;
+        for(double t: times) variance += (t-mean)*(t-mean)/Math.max(1,iterations-1);
+        System.out.println(String.format("%-52s %-10s %14.1f %12.1f",c.name,PHASES[p],mean,Math.sqrt(variance)));
+      }
+    }
+    System.out.println("(sink "+sink+")");
+  }
+}
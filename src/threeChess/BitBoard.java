@@ -0,0 +1,179 @@
+package threeChess;
+
+import java.io.Serializable;
+
+/**
+ * A bitboard representation of the pieces on the board.
+ * Each set of positions is stored as a pair of longs:
+ * the low word holds the positions with ordinals 0-63,
+ * and the bottom 32 bits of the high word hold the positions with ordinals 64-95.
+ * The bitboard keeps an occupancy set for each colour and each piece type,
+ * and the class provides precomputed knight, king and pawn masks for every position,
+ * so that move generation for those pieces is a matter of masking.
+ * It also provides precomputed rays for the sliding pieces,
+ * which already follow the reversal of direction when a ray crosses into another section of the board.
+ * **/
+public final class BitBoard implements Cloneable, Serializable {
+
+  /** Serial version UID for BitBoard serialization and storage**/
+  private static final long serialVersionUID = -3125786329015672263L;
+  /** Offset of the piece type sets, which follow the three colour sets **/
+  private static final int TYPES = 3;
+
+  /** Knight moves from each position, as low and high words at 2*ordinal and 2*ordinal+1 **/
+  private static final long[] KNIGHT = new long[2*Board.SIZE];
+  /** King moves (excluding castling) from each position **/
+  private static final long[] KING = new long[2*Board.SIZE];
+  /** Single step pawn advances from each position, for each colour of pawn **/
+  private static final long[][] PAWN_PUSH = new long[3][2*Board.SIZE];
+  /** Two step pawn advances, only from a pawn's initial row, for each colour of pawn **/
+  private static final long[][] PAWN_DOUBLE = new long[3][2*Board.SIZE];
+  /** Diagonal pawn captures from each position, for each colour of pawn **/
+  private static final long[][] PAWN_ATTACK = new long[3][2*Board.SIZE];
+  /**
+   * The number of rays from each position, one for each of the Queen's steps.
+   * Rays 0-7 are the Bishop's steps and rays 8-11 are the Rook's steps, in the order of {@link PieceType#getSteps()}.
+   * **/
+  public static final int RAYS = 12;
+  /** The ordinals of the positions along each ray, in the order a sliding piece reaches them, at RAYS*ordinal+ray **/
+  private static final byte[][] RAY = new byte[RAYS*Board.SIZE][];
+  /** The positions along each ray, as low and high words at 2*(RAYS*ordinal+ray) and 2*(RAYS*ordinal+ray)+1 **/
+  private static final long[] RAY_MASK = new long[2*RAYS*Board.SIZE];
+
+  static{
+    Position[] positions = Position.values();
+    for(Colour c: Colour.values()){
+      Piece pawn = Piece.get(PieceType.PAWN,c);
+      Direction[][] steps = PieceType.PAWN.steps();
+      for(Position p: positions){
+        for(int i = 0; i<steps.length; i++){
+          if(i==1 && (p.getColour()!=c || p.getRow()!=1)) continue;//two steps only from the initial row
+          long[] table = i==0?PAWN_PUSH[c.ordinal()]:(i==1?PAWN_DOUBLE[c.ordinal()]:PAWN_ATTACK[c.ordinal()]);
+          fill(table, p, pawn, steps[i]);
+        }
+      }
+    }
+    Piece knight = Piece.get(PieceType.KNIGHT,Colour.BLUE), king = Piece.get(PieceType.KING,Colour.BLUE);
+    for(Position p: positions){
+      for(Direction[] step: PieceType.KNIGHT.steps()) fill(KNIGHT, p, knight, step);
+      for(Direction[] step: PieceType.KING.steps()) fill(KING, p, king, step);
+    }
+    Piece queen = Piece.get(PieceType.QUEEN,Colour.BLUE);
+    Direction[][] steps = PieceType.QUEEN.steps();
+    byte[] squares = new byte[Board.SIZE];
+    for(Position p: positions){
+      for(int r = 0; r<RAYS; r++){
+        int index = RAYS*p.ordinal()+r, length = 0;
+        //iterate the step as Board.isLegalMove does, reversing once the ray leaves the section it started in
+        Position tmp = Board.walk(queen, steps[r], p, false);
+        while(tmp!=null && !contains(RAY_MASK[2*index], RAY_MASK[2*index+1], tmp.ordinal())){//stop if the ray loops
+          squares[length++] = (byte) tmp.ordinal();
+          RAY_MASK[2*index+(tmp.ordinal()>>>6)] |= 1L<<tmp.ordinal();
+          tmp = Board.walk(queen, steps[r], tmp, tmp.getColour()!=p.getColour());
+        }
+        RAY[index] = java.util.Arrays.copyOf(squares, length);
+      }
+    }
+  }
+
+  /** Adds the end of a step from a position to the table entry for that position, if it is on the board. **/
+  private static void fill(long[] table, Position from, Piece piece, Direction[] step){
+    Position to = Board.walk(piece, step, from, false);
+    if(to!=null) table[2*from.ordinal()+(to.ordinal()>>>6)] |= 1L<<to.ordinal();
+  }
+
+  /** The occupancy sets, as low and high words, for each colour followed by each piece type **/
+  private long[] sets = new long[2*(TYPES+6)];
+
+  /** Creates an empty bitboard. **/
+  public BitBoard(){}
+
+  /** Adds a piece to the sets at the given position ordinal. **/
+  void add(int square, Piece piece){
+    int word = square>>>6; long bit = 1L<<square;
+    sets[2*piece.getColour().ordinal()+word] |= bit;
+    sets[2*(TYPES+piece.getType().ordinal())+word] |= bit;
+  }
+
+  /** Removes a piece from the sets at the given position ordinal. **/
+  void remove(int square, Piece piece){
+    int word = square>>>6; long bit = ~(1L<<square);
+    sets[2*piece.getColour().ordinal()+word] &= bit;
+    sets[2*(TYPES+piece.getType().ordinal())+word] &= bit;
+  }
+
+  /** @return the low word (ordinals 0-63) of the positions occupied by the given colour. **/
+  public long getLow(Colour colour){return sets[2*colour.ordinal()];}
+  /** @return the high word (ordinals 64-95) of the positions occupied by the given colour. **/
+  public long getHigh(Colour colour){return sets[2*colour.ordinal()+1];}
+  /** @return the low word (ordinals 0-63) of the positions occupied by the given piece type. **/
+  public long getLow(PieceType type){return sets[2*(TYPES+type.ordinal())];}
+  /** @return the high word (ordinals 64-95) of the positions occupied by the given piece type. **/
+  public long getHigh(PieceType type){return sets[2*(TYPES+type.ordinal())+1];}
+  /** @return the low word (ordinals 0-63) of all occupied positions. **/
+  public long getOccupiedLow(){return sets[0]|sets[2]|sets[4];}
+  /** @return the high word (ordinals 64-95) of all occupied positions. **/
+  public long getOccupiedHigh(){return sets[1]|sets[3]|sets[5];}
+
+  /** @return true if there is a piece at the given position. **/
+  public boolean isOccupied(Position position){
+    int square = position.ordinal(), word = square>>>6;
+    return ((sets[word]|sets[2+word]|sets[4+word])>>>square & 1L)!=0;
+  }
+
+  /** @return true if the position with ordinal square is in the set given by the low and high words. **/
+  public static boolean contains(long low, long high, int square){
+    return ((square<64?low:high)>>>square & 1L)!=0;
+  }
+
+  /** @return the low word of the knight moves from a position. **/
+  public static long knightLow(Position from){return KNIGHT[2*from.ordinal()];}
+  /** @return the high word of the knight moves from a position. **/
+  public static long knightHigh(Position from){return KNIGHT[2*from.ordinal()+1];}
+  /** @return the low word of the one square king moves from a position. **/
+  public static long kingLow(Position from){return KING[2*from.ordinal()];}
+  /** @return the high word of the one square king moves from a position. **/
+  public static long kingHigh(Position from){return KING[2*from.ordinal()+1];}
+  /** @return the low word of the single step advances of a pawn of the given colour. **/
+  public static long pawnPushLow(Colour colour, Position from){return PAWN_PUSH[colour.ordinal()][2*from.ordinal()];}
+  /** @return the high word of the single step advances of a pawn of the given colour. **/
+  public static long pawnPushHigh(Colour colour, Position from){return PAWN_PUSH[colour.ordinal()][2*from.ordinal()+1];}
+  /** @return the low word of the two step advances of a pawn of the given colour, empty unless on its initial row. **/
+  public static long pawnDoubleLow(Colour colour, Position from){return PAWN_DOUBLE[colour.ordinal()][2*from.ordinal()];}
+  /** @return the high word of the two step advances of a pawn of the given colour, empty unless on its initial row. **/
+  public static long pawnDoubleHigh(Colour colour, Position from){return PAWN_DOUBLE[colour.ordinal()][2*from.ordinal()+1];}
+  /** @return the low word of the diagonal captures of a pawn of the given colour. **/
+  public static long pawnAttackLow(Colour colour, Position from){return PAWN_ATTACK[colour.ordinal()][2*from.ordinal()];}
+  /** @return the high word of the diagonal captures of a pawn of the given colour. **/
+  public static long pawnAttackHigh(Colour colour, Position from){return PAWN_ATTACK[colour.ordinal()][2*from.ordinal()+1];}
+
+  /** @return the first ray (see {@link #RAYS}) a sliding piece of the given type may move along. **/
+  public static int firstRay(PieceType type){return type==PieceType.ROOK?8:0;}
+  /** @return one more than the last ray (see {@link #RAYS}) a sliding piece of the given type may move along. **/
+  public static int lastRay(PieceType type){return type==PieceType.BISHOP?8:RAYS;}
+  /** @return the low word of the positions along a ray from a position, ignoring any pieces in the way. **/
+  public static long rayLow(int ray, Position from){return RAY_MASK[2*(RAYS*from.ordinal()+ray)];}
+  /** @return the high word of the positions along a ray from a position, ignoring any pieces in the way. **/
+  public static long rayHigh(int ray, Position from){return RAY_MASK[2*(RAYS*from.ordinal()+ray)+1];}
+
+  /**
+   * Returns the ordinals of the positions along a ray from a position, nearest first, ignoring any pieces in the way.
+   * The array is shared and must not be modified.
+   * @param ray the ray, between 0 and {@link #RAYS}-1.
+   * @param from the position the ray starts from, which is not included.
+   * @return the ordinals of the positions a sliding piece would pass through, in order.
+   * **/
+  static byte[] ray(int ray, Position from){return RAY[RAYS*from.ordinal()+ray];}
+
+  /**
+   * Returns a copy of the bitboard.
+   * @return a deep clone of the bitboard.
+   * **/
+  public BitBoard clone(){
+    try{
+      BitBoard clone = (BitBoard) super.clone();
+      clone.sets = sets.clone();
+      return clone;
+    }catch(CloneNotSupportedException e){throw new AssertionError(e);}
+  }
+}
@@ -1,6 +1,7 @@
 package threeChess;
 
-import java.io.Serializable;
+import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -9,23 +10,163 @@ import java.util.*;
  * or null is free. It also records previous moves, 
  * as well as whose move it is, and which pieces have been 
  * captured by which player.
+ * Internally the pieces are stored as compact codes in an array indexed by {@link Position#ordinal()},
+ * so that lookups and clones avoid hashing and boxing,
+ * and mirrored in a {@link BitBoard} so that legality checks and move generation can use masks.
+ * A Zobrist key of the position is maintained as moves are made, see {@link #getKey()}.
+ * Boards are serialized with the compact format of {@link BoardCodec}.
+ * A read only view of a board can be taken without copying it, see {@link #snapshot()}.
  * **/
 public class Board implements Cloneable, Serializable {
   
   /** Serial version UID for Board serialization and storage**/
-  private static final long serialVersionUID = -8547775276050612530L;
-  /** A map from board positions to the pieces at that position **/
-  private HashMap<Position,Piece> board;
+  private static final long serialVersionUID = -2874617283395627108L;
+  /** The number of positions on the board **/
+  static final int SIZE = 96;
+  /** The most pieces any one player can have on the board **/
+  private static final int MAX_PIECES = 16;
+  /** The most pieces any one player can capture, which is every piece on the board **/
+  private static final int MAX_CAPTURES = 48;
+  /** The number of players, one for each colour **/
+  private static final int PLAYERS = 3;
+  /** Undo record fields: the start and end ordinals, the taken piece code, and the time at the top **/
+  private static final int UNDO_SQUARE = 0x7F, UNDO_CODE = 0x1F, UNDO_END = 7, UNDO_TAKEN = 14, UNDO_REPLACED = 24, UNDO_TIME = 32;
+  /** Undo record flags for a promotion, castling, the game being over beforehand, and the pieces having moved **/
+  private static final long UNDO_PROMOTED = 1L<<19, UNDO_CASTLE_LEFT = 1L<<20, UNDO_CASTLE_RIGHT = 1L<<21,
+    UNDO_GAME_OVER = 1L<<22, UNDO_MOVED = 1L<<23;
+  /** Random keys for each piece code (1-18) at each position, indexed by 96*code+ordinal, for Zobrist hashing **/
+  private static final long[] PIECE_KEYS = new long[19*SIZE];
+  /** Random keys for each player having the move, indexed by colour ordinal **/
+  private static final long[] TURN_KEYS = new long[3];
+  /** 
+   * The piece keys of the board rotated by one and two sections (see {@link Symmetry}), indexed as PIECE_KEYS,
+   * so that the key of a piece at a position is the key of the rotated piece at the rotated position.
+   * **/
+  private static final long[][] ROTATED_PIECE_KEYS = new long[2][19*SIZE];
+
+  static{
+    Random random = new Random(0x3C4E55L);//fixed seed, so keys are the same in every run
+    for(int i = SIZE; i<PIECE_KEYS.length; i++) PIECE_KEYS[i] = random.nextLong();
+    for(int i = 0; i<TURN_KEYS.length; i++) TURN_KEYS[i] = random.nextLong();
+    for(int rotation = 1; rotation<3; rotation++){
+      for(int code = 1; code<19; code++){
+        int rotated = 1+(owner(code)+rotation)%3*6+(code-1)%6;
+        for(int square = 0; square<SIZE; square++)
+          ROTATED_PIECE_KEYS[rotation-1][SIZE*code+square] = PIECE_KEYS[SIZE*rotated+(square+32*rotation)%SIZE];
+      }
+    }
+  }
+
+  /** The code of the piece at each position, indexed by position ordinal, or 0 if the position is vacant **/
+  private transient byte[] board;
+  /** The same piece placement as a set of bitboards **/
+  private transient BitBoard bits;
+  /** The ordinals of the positions of each player's pieces, in blocks of MAX_PIECES indexed by colour ordinal **/
+  private transient byte[] pieceList;
+  /** The number of pieces each player has on the board, indexed by colour ordinal **/
+  private transient int[] pieceCount;
+  /** For each occupied position, the index of that position in its owner's block of pieceList **/
+  private transient byte[] pieceIndex;
+  /** The Zobrist key of the piece placement and the player to move **/
+  private transient long key;
+  /** The keys of the position rotated by one and two sections, see {@link #getKey(int)} **/
+  private transient long rotatedKey1, rotatedKey2;
   /**A flag that is true if and only if a King has been captured**/
-  private boolean gameOver = false;
+  private transient boolean gameOver;
   /**The player whose turn it is**/
-  private Colour turn = Colour.BLUE;//Blue goes first
-  /**The moves taken so far, represented as an array of two positions, the start and end of the move**/
-  private ArrayList<Position[]> history;//can only be changed by taking moves
-  /**A map indicating which player has taken which piece, to support alternative scoring methods**/
-  private HashMap<Colour,ArrayList<Piece>> captured;
-  /**A Map representing the remaining time allowed for each player, in milliseconds**/
-  private HashMap<Colour,Integer> timeLeft;
+  private transient Colour turn;
+  /**The moves taken so far, as the latest entry of an immutable list that clones can share, or null if no moves have been made**/
+  private transient History history;//can only be changed by taking moves
+  /**The history flattened into an array when a move is first looked up by index, or null, shared by clones as it is never changed**/
+  private transient volatile History[] moveIndex;
+  /**The key of the position before the first move in history, which may be repeated later**/
+  private transient long initialKey;
+  /**The number of times a position may occur before the game is drawn, or 0 for no limit**/
+  private int repetitionLimit;
+  /**The number of quiet moves in a row (see {@link #getQuietMoves()}) after which the game is drawn, or 0 for no limit**/
+  private int quietLimit;
+  /**The rule consulted after each move to end the game early, or null, shared by clones**/
+  private transient Adjudicator adjudicator;
+  /**The player the adjudicator decided had lost, if it ended the game**/
+  private transient Colour adjudicated;
+  /**The codes of the pieces taken by each player, in blocks of MAX_CAPTURES indexed by colour ordinal**/
+  private transient byte[] captured;
+  /**The number of pieces taken by each player, indexed by colour ordinal**/
+  private transient int[] capturedCount;
+  /**The remaining time allowed for each player, in milliseconds, indexed by colour ordinal**/
+  private transient int[] timeLeft;
+  /**The combined value of each player's pieces on the board, indexed by colour ordinal**/
+  private transient int[] material;
+  /**The combined value of the pieces taken by each player, indexed by colour ordinal**/
+  private transient int[] capturedValue;
+  /**The index in each player's captures of the first King they took, or MAX_CAPTURES if they have not taken one**/
+  private transient int[] kingTaken;
+  /**The winner and loser of the game, kept up to date as moves are made so they need not be searched for**/
+  private transient Colour winner, loser;
+  /**
+   * The positions attacked by each piece, as low and high words in the order of pieceList,
+   * followed by the positions attacked by each player, at 2*(PLAYERS*MAX_PIECES+colour)
+   * **/
+  private transient long[] attacks;
+  /**A bit for each player whose attacks are up to date, cleared whenever a piece is placed or removed**/
+  private transient int attacksValid;
+  /**The legal moves of the current position once they have been asked for, or null, shared by clones as it is immutable**/
+  private transient LegalMoves legal;
+  /**Scratch space for {@link #staticExchange(int)}, allocated when first needed and never shared with a clone or snapshot**/
+  private transient Exchange exchange;
+  /**True for a read only snapshot, whose mutators throw, and which shares its arrays with the board it was taken from**/
+  private transient boolean frozen;
+  /**
+   * The groups of arrays this board shares with a snapshot, as a set of the SHARED flags,
+   * each of which is copied just before the board first writes to it, so a move only copies what it changes
+   * **/
+  private transient int shared;
+  /** Groups of arrays that are copied together once shared: the piece placement, the captures, the clocks and the attack maps **/
+  private static final int SHARED_PLACEMENT = 1, SHARED_CAPTURES = 2, SHARED_CLOCKS = 4, SHARED_ATTACKS = 8, SHARED_ALL = 15;
+
+  /**
+   * The legal moves of a position, as packed moves and as a set of end positions for each start position.
+   * Instances are never modified, so boards cloned from the same position can share them.
+   * **/
+  private static final class LegalMoves{
+    /** The packed moves, in the order of {@link Board#generateLegalMoves(int[])} **/
+    final int[] moves;
+    /** The end positions of the moves from each start position, as low and high words at 2*ordinal and 2*ordinal+1 **/
+    final long[] targets = new long[2*SIZE];
+    /** A read only view of the moves in the Agent API format **/
+    final List<Position[]> list = new AbstractList<Position[]>(){
+      public Position[] get(int index){return Move.toPositions(moves[index]);}
+      public int size(){return moves.length;}
+    };
+
+    LegalMoves(int[] moves){
+      this.moves = moves;
+      for(int move: moves){
+        int end = Move.getEndOrdinal(move);
+        targets[2*Move.getStartOrdinal(move)+(end>>>6)] |= 1L<<end;
+      }
+    }
+
+    /** @return true if the move from start to end, given by ordinals, is one of the moves. **/
+    boolean contains(int start, int end){
+      return (targets[2*start+(end>>>6)]>>>end & 1L)!=0;
+    }
+  }
+
+  /**
+   * Scratch space for playing out an exchange, sized for the longest possible one,
+   * so that {@link Board#staticExchange(int)} does not allocate on every call.
+   * **/
+  private static final class Exchange{
+    /** The most captures an exchange can have: the move itself, then one by each other piece on the board **/
+    static final int MAX_STEPS = 3*MAX_PIECES;
+    /** The positions of the pieces that could join in, set to -1 once they have, and the codes of those pieces **/
+    final int[] candidates = new int[3*MAX_PIECES], pieces = new int[3*MAX_PIECES];
+    /** For each capture, the player making it, the owner of the piece taken, the gain to the capturer and the loss to the owner **/
+    final int[] capturer = new int[MAX_STEPS], owner = new int[MAX_STEPS], gain = new int[MAX_STEPS], loss = new int[MAX_STEPS];
+    /** The net result for each player of the rest of the exchange, by colour ordinal **/
+    final int[] outcome = new int[3];
+  }
 
   /**
    * Initialises the board, placing all pieces at their initial position.
@@ -33,25 +174,189 @@ public class Board implements Cloneable, Serializable {
    * @param time the number of milliseconds each player has in total for the entire game.
    * **/
   public Board(int time){
-    board = new HashMap<Position,Piece>();
+    init();
     try{
       for(Colour c: Colour.values()){
-        board.put(Position.get(c,0,0),new Piece(PieceType.ROOK,c)); board.put(Position.get(c,0,7), new Piece(PieceType.ROOK,c));
-        board.put(Position.get(c,0,1),new Piece(PieceType.KNIGHT,c)); board.put(Position.get(c,0,6), new Piece(PieceType.KNIGHT,c));
-        board.put(Position.get(c,0,2),new Piece(PieceType.BISHOP,c)); board.put(Position.get(c,0,5), new Piece(PieceType.BISHOP,c));
-        board.put(Position.get(c,0,3),new Piece(PieceType.QUEEN,c)); board.put(Position.get(c,0,4), new Piece(PieceType.KING,c));
+        put(Position.get(c,0,0),PieceType.ROOK,c); put(Position.get(c,0,7),PieceType.ROOK,c);
+        put(Position.get(c,0,1),PieceType.KNIGHT,c); put(Position.get(c,0,6),PieceType.KNIGHT,c);
+        put(Position.get(c,0,2),PieceType.BISHOP,c); put(Position.get(c,0,5),PieceType.BISHOP,c);
+        put(Position.get(c,0,3),PieceType.QUEEN,c); put(Position.get(c,0,4),PieceType.KING,c);
         for(int i = 0; i<8; i++){
-          board.put(Position.get(c,1,i), new Piece(PieceType.PAWN,c));
+          put(Position.get(c,1,i),PieceType.PAWN,c);
         }
       }
     }catch(ImpossiblePositionException e){}//no impossible positions in this code
-    history = new ArrayList<Position[]>();
-    captured = new HashMap<Colour,ArrayList<Piece>>();
-    timeLeft = new HashMap<Colour,Integer>();
-    for(Colour c: Colour.values()){
-      captured.put(c,new ArrayList<>());
-      timeLeft.put(c,time);
+    Arrays.fill(timeLeft,time);
+    initialKey = key;
+  }
+
+  /** Creates an empty board, with no pieces, moves or time, for codecs to set up. **/
+  Board(){
+    init();
+  }
+
+  /** Allocates the board's state, for an empty board with Blue to move. **/
+  private void init(){
+    board = new byte[SIZE];
+    bits = new BitBoard();
+    pieceList = new byte[PLAYERS*MAX_PIECES];
+    pieceCount = new int[PLAYERS];
+    pieceIndex = new byte[SIZE];
+    captured = new byte[PLAYERS*MAX_CAPTURES];
+    capturedCount = new int[PLAYERS];
+    timeLeft = new int[PLAYERS];
+    material = new int[PLAYERS];
+    capturedValue = new int[PLAYERS];
+    kingTaken = new int[PLAYERS];
+    Arrays.fill(kingTaken,MAX_CAPTURES);
+    attacks = new long[2*PLAYERS*(MAX_PIECES+1)];
+    attacksValid = 0;
+    history = null;
+    turn = Colour.BLUE;//Blue goes first
+    key = TURN_KEYS[turn.ordinal()];
+    rotatedKey1 = TURN_KEYS[(turn.ordinal()+1)%3];
+    rotatedKey2 = TURN_KEYS[(turn.ordinal()+2)%3];
+    initialKey = key;
+    gameOver = false;
+  }
+
+  /** Empties the board and clears its history, captures and time, for codecs that set up a position directly. **/
+  void clear(){
+    modify();
+    own(SHARED_ALL);
+    for(int i = 0; i<SIZE; i++) set(i,0);
+    setTurn(Colour.BLUE);
+    gameOver = false;
+    adjudicated = null;
+    history = null;
+    Arrays.fill(capturedCount,0);
+    Arrays.fill(capturedValue,0);
+    Arrays.fill(kingTaken,MAX_CAPTURES);
+    Arrays.fill(timeLeft,0);
+    settle();
+  }
+
+  /**
+   * Places a piece, for codecs that set up a position directly.
+   * @param position the position to place the piece at.
+   * @param piece the piece to place, or null to empty the position.
+   * @throws IllegalArgumentException if the piece's owner already has the most pieces a player can have.
+   * **/
+  void place(Position position, Piece piece){
+    modify();
+    int code = piece==null?0:piece.code(), colour = owner(code);
+    if(colour>=0 && colour!=owner(board[position.ordinal()]) && pieceCount[colour]==MAX_PIECES)
+      throw new IllegalArgumentException("Too many "+piece.getColour()+" pieces");
+    set(position.ordinal(),code);
+  }
+
+  /**
+   * Sets the player to move and whether the game is over, for codecs that set up a position directly.
+   * This must be called after the pieces, clocks and captures are set up, as it also decides the winner and loser.
+   * @param turn the player whose turn it is.
+   * @param gameOver whether the game has ended.
+   * @param adjudicated the player an adjudicator decided had lost, or null if the game was not adjudicated.
+   * **/
+  void setState(Colour turn, boolean gameOver, Colour adjudicated){
+    modify();
+    setTurn(turn);
+    this.gameOver = gameOver;
+    this.adjudicated = gameOver?adjudicated:null;
+    //the keys of earlier positions are unknown, but the current one may still be repeated
+    if(history==null) initialKey = key;
+    else history = new History(history.previous,history.start,history.end,key,false);
+    settle();
+  }
+
+  /** Sets a player's remaining time in milliseconds, for codecs that set up a position directly. **/
+  void setTimeLeft(Colour player, int time){
+    modify();
+    own(SHARED_CLOCKS);
+    timeLeft[player.ordinal()] = time;
+  }
+
+  /**
+   * Records a piece as taken by a player, for codecs that set up a position directly.
+   * @throws IllegalArgumentException if the player has already taken every piece on the board.
+   * **/
+  void addCaptured(Colour player, Piece piece){
+    modify();
+    if(capturedCount[player.ordinal()]==MAX_CAPTURES) throw new IllegalArgumentException("Too many captures");
+    capture(player.ordinal(),piece.code());
+  }
+
+  /** Adds a piece to a player's captures, keeping the captured value and first King taken up to date. **/
+  private void capture(int colour, int code){
+    if((shared & SHARED_CAPTURES)!=0) own(SHARED_CAPTURES);
+    Piece piece = Piece.fromCode(code);
+    if(piece.getType()==PieceType.KING && kingTaken[colour]==MAX_CAPTURES) kingTaken[colour] = capturedCount[colour];
+    captured[colour*MAX_CAPTURES+capturedCount[colour]++] = (byte) code;
+    capturedValue[colour] += piece.getValue();
+  }
+
+  /** Removes the latest piece from a player's captures, reversing {@link #capture(int,int)}. **/
+  private void uncapture(int colour){
+    if((shared & SHARED_CAPTURES)!=0) own(SHARED_CAPTURES);
+    int index = --capturedCount[colour];
+    if(kingTaken[colour]==index) kingTaken[colour] = MAX_CAPTURES;
+    capturedValue[colour] -= Piece.fromCode(captured[colour*MAX_CAPTURES+index]).getValue();
+  }
+
+  /** 
+   * Appends a move to the history without playing it, for codecs that set up a position directly.
+   * The position the move led to is not known, so it is never counted as a repetition.
+   * **/
+  void addHistory(Position start, Position end){
+    modify();
+    history = new History(history,start,end,0,false);
+  }
+
+  /** Places a piece of the given type and colour at a position, used to set up the board. **/
+  private void put(Position position, PieceType type, Colour colour){
+    set(position.ordinal(), Piece.get(type,colour).code());
+  }
+
+  /** @return the colour ordinal of the piece with the given code, or -1 for no piece. **/
+  private static int owner(int code){
+    return code==0?-1:(code-1)/6;
+  }
+
+  /**
+   * Sets the piece code at a position, keeping the bitboards, piece lists, material and key up to date,
+   * and marking the attack maps and legal moves as out of date.
+   * @param square the ordinal of the position.
+   * @param code the code of the piece to place there, or 0 to empty the position.
+   * **/
+  private void set(int square, int code){
+    if((shared & SHARED_PLACEMENT)!=0) own(SHARED_PLACEMENT);
+    int old = board[square];
+    if(old!=0){
+      Piece piece = Piece.fromCode(old);
+      bits.remove(square, piece);
+      int colour = piece.getColour().ordinal();
+      material[colour] -= piece.getValue();
+      if(owner(code)!=colour){//the piece list only changes if the owner changes
+        int last = pieceList[colour*MAX_PIECES+ --pieceCount[colour]];//move the last piece into the gap
+        pieceList[colour*MAX_PIECES+pieceIndex[square]] = (byte) last;
+        pieceIndex[last] = pieceIndex[square];
+      }
     }
+    if(code!=0){
+      Piece piece = Piece.fromCode(code);
+      bits.add(square, piece);
+      int colour = piece.getColour().ordinal();
+      material[colour] += piece.getValue();
+      if(owner(old)!=colour){
+        pieceIndex[square] = (byte) pieceCount[colour];
+        pieceList[colour*MAX_PIECES+pieceCount[colour]++] = (byte) square;
+      }
+    }
+    key ^= PIECE_KEYS[SIZE*old+square]^PIECE_KEYS[SIZE*code+square];
+    rotatedKey1 ^= ROTATED_PIECE_KEYS[0][SIZE*old+square]^ROTATED_PIECE_KEYS[0][SIZE*code+square];
+    rotatedKey2 ^= ROTATED_PIECE_KEYS[1][SIZE*old+square]^ROTATED_PIECE_KEYS[1][SIZE*code+square];
+    board[square] = (byte) code;
+    attacksValid = 0;
+    legal = null;
   }
 
   /** @return whether in manual mode, the legal moves should be displayed on the board. **/
@@ -61,23 +366,65 @@ public class Board implements Cloneable, Serializable {
 
   /**
    * Return a set of all the positions of pieces belonging to a player.
-   * This is a method of convenience, but is not very fast. 
-   * Time concious players may prefer to maintain their own data structure that persists between moves.
+   * This is a method of convenience, which builds a new set on each call. 
+   * Time concious players may prefer {@link #getPieceCount(Colour)} and {@link #getPiecePosition(Colour,int)},
+   * which read the board's piece lists without allocating.
    * @param player the Colour of the player owing the pieces
    * @return a Set of the positions that are occupied by a piece of the given colour.
    * **/
   public Set<Position> getPositions(Colour player){
-    HashSet<Position> positions = new HashSet<Position>();
-    for(Position p : Position.values()){
-      if(board.containsKey(p) && board.get(p).getColour()==player)
-        positions.add(p);
-    }
+    int count = pieceCount[player.ordinal()];
+    HashSet<Position> positions = new HashSet<Position>(2*count);
+    for(int i = 0; i<count; i++) positions.add(getPiecePosition(player,i));
     return positions;
   }
 
+  /**
+   * Gets the number of pieces a player has on the board.
+   * @param player the Colour of the player owning the pieces
+   * @return the number of pieces of that colour on the board.
+   * **/
+  public int getPieceCount(Colour player){
+    return pieceCount[player.ordinal()];
+  }
+
+  /**
+   * Gets the position of one of a player's pieces, from the piece list the board maintains as moves are made.
+   * Together with {@link #getPieceCount(Colour)} this iterates over a player's pieces without allocating:
+   * the positions for indices 0 to getPieceCount(player)-1 are exactly the positions of the player's pieces.
+   * The order is arbitrary, and changes as moves are made.
+   * @param player the Colour of the player owning the pieces
+   * @param index the index of the piece in the list, from 0 to getPieceCount(player)-1
+   * @return the position of that piece.
+   * @throws ArrayIndexOutOfBoundsException if the index does not correspond to a piece.
+   * **/
+  public Position getPiecePosition(Colour player, int index){
+    if(0<=index && index<pieceCount[player.ordinal()])
+      return Position.get(pieceList[player.ordinal()*MAX_PIECES+index]);
+    else throw new ArrayIndexOutOfBoundsException("Index out of bounds.");
+  }
+
   /** @return a set of all the pieces captured by {@param player}. **/
   public List<Piece> getCaptured(Colour player) {
-    return new ArrayList<>(captured.get(player));
+    int offset = player.ordinal()*MAX_CAPTURES, count = capturedCount[player.ordinal()];
+    ArrayList<Piece> pieces = new ArrayList<>(count);
+    for(int i = 0; i<count; i++) pieces.add(Piece.fromCode(captured[offset+i]));
+    return pieces;
+  }
+
+  /** @return the number of pieces captured by the player, without copying them. **/
+  int getCapturedCount(Colour player){
+    return capturedCount[player.ordinal()];
+  }
+
+  /** @return the piece at the given index of the pieces captured by the player, in the order they were taken. **/
+  Piece getCaptured(Colour player, int index){
+    return Piece.fromCode(captured[player.ordinal()*MAX_CAPTURES+index]);
+  }
+
+  /** @return the latest entry of the history of moves, or null if no moves have been made. **/
+  History getHistory(){
+    return history;
   }
 
   /**
@@ -86,7 +433,267 @@ public class Board implements Cloneable, Serializable {
    * @return the piece at that position or null, if the position is vacant.
    * **/
   public Piece getPiece(Position position){
-    return board.get(position);
+    return Piece.fromCode(board[position.ordinal()]);
+  }
+
+  /**
+   * Gets the bitboards for the current piece placement, which cannot be modified directly.
+   * This is a live view that changes as moves are made, but only until a {@link #snapshot()} is taken:
+   * the board then copies its placement before its next move, so an earlier view keeps showing the position of the snapshot.
+   * Get the view again after taking a snapshot.
+   * @return the bitboards of the board.
+   * **/
+  public BitBoard getBitBoard(){
+    return bits;
+  }
+
+  /**
+   * Checks if a player's pieces attack a position, that is, whether one of them could take a piece there.
+   * Pawns attack diagonally forward, and sliding pieces attack along their rays up to and including the first piece.
+   * Positions holding the player's own pieces count as attacked if they are defended.
+   * It does not matter whose turn it is.
+   * The attack maps are built from the piece lists the first time they are needed after a move, and reused until the next move.
+   * @param position the position to check.
+   * @param player the colour of the attacking player.
+   * @return true if and only if a piece of that colour attacks the position.
+   * **/
+  public boolean isAttackedBy(Position position, Colour player){
+    int colour = player.ordinal(), index = 2*(PLAYERS*MAX_PIECES+colour);
+    long[] attacks = attacks(colour);
+    return BitBoard.contains(attacks[index], attacks[index+1], position.ordinal());
+  }
+
+  /**
+   * Gets the low word (ordinals 0-63) of all the positions a player attacks, as in {@link #isAttackedBy(Position,Colour)}.
+   * @param player the colour of the attacking player.
+   * @return the low word of the attack map.
+   * **/
+  public long getAttacksLow(Colour player){
+    int colour = player.ordinal();
+    return attacks(colour)[2*(PLAYERS*MAX_PIECES+colour)];
+  }
+
+  /**
+   * Gets the high word (ordinals 64-95) of all the positions a player attacks, as in {@link #isAttackedBy(Position,Colour)}.
+   * @param player the colour of the attacking player.
+   * @return the high word of the attack map.
+   * **/
+  public long getAttacksHigh(Colour player){
+    int colour = player.ordinal();
+    return attacks(colour)[2*(PLAYERS*MAX_PIECES+colour)+1];
+  }
+
+  /**
+   * Finds the pieces of a player that attack a position, as in {@link #isAttackedBy(Position,Colour)}.
+   * @param position the position being attacked.
+   * @param player the colour of the attacking player.
+   * @param attackers an array to fill with the positions of the attacking pieces. An array of length 16 is always large enough.
+   * @return the number of attackers written to the array.
+   * **/
+  public int getAttackers(Position position, Colour player, Position[] attackers){
+    int colour = player.ordinal(), square = position.ordinal(), count = 0;
+    long[] attacks = attacks(colour);
+    for(int i = colour*MAX_PIECES, end = i+pieceCount[colour]; i<end; i++)
+      if(BitBoard.contains(attacks[2*i], attacks[2*i+1], square)) attackers[count++] = Position.get(pieceList[i]);
+    return count;
+  }
+
+  /**
+   * Finds a player's King.
+   * @param player the colour of the King.
+   * @return the position of the King, or null if it has been taken.
+   * **/
+  public Position getKingPosition(Colour player){
+    int king = Piece.get(PieceType.KING,player).code();
+    for(int i = player.ordinal()*MAX_PIECES, end = i+pieceCount[player.ordinal()]; i<end; i++)
+      if(board[pieceList[i]]==king) return Position.get(pieceList[i]);
+    return null;
+  }
+
+  /**
+   * Checks if a player's King is in danger, that is, attacked by either of the other players.
+   * @param player the colour of the King.
+   * @return true if the King is on the board and at least one opposing piece attacks it.
+   * **/
+  public boolean isKingInDanger(Colour player){
+    Position king = getKingPosition(player);
+    if(king==null) return false;
+    for(int c = 0; c<PLAYERS; c++) if(c!=player.ordinal() && isAttackedBy(king,Colour.get(c))) return true;
+    return false;
+  }
+
+  /**
+   * Gets the attack maps with those of a player up to date, building and caching them if need be.
+   * A snapshot shares its arrays with the board it was taken from and must never write to them,
+   * so it builds out of date maps into a new array each time instead.
+   * @return an array laid out as the attacks field, whose entries for the player are up to date.
+   * **/
+  private long[] attacks(int colour){
+    if((attacksValid & 1<<colour)!=0) return attacks;
+    if(frozen) return computeAttacks(colour,new long[attacks.length]);
+    if((shared & SHARED_ATTACKS)!=0) own(SHARED_ATTACKS);
+    computeAttacks(colour,attacks);
+    attacksValid |= 1<<colour;
+    return attacks;
+  }
+
+  /**
+   * Builds the attack map of each of a player's pieces, and their union, from the piece lists.
+   * @param attacks the array to write the maps to, laid out as the attacks field.
+   * @return the array.
+   * **/
+  private long[] computeAttacks(int colour, long[] attacks){
+    Colour player = Colour.get(colour);
+    long allLow = 0, allHigh = 0;
+    for(int i = colour*MAX_PIECES, end = i+pieceCount[colour]; i<end; i++){
+      Position from = Position.get(pieceList[i]);
+      PieceType type = Piece.fromCode(board[from.ordinal()]).getType();
+      long low = 0, high = 0;
+      switch(type){
+        case PAWN:
+          low = BitBoard.pawnAttackLow(player,from); high = BitBoard.pawnAttackHigh(player,from);
+          break;
+        case KNIGHT:
+          low = BitBoard.knightLow(from); high = BitBoard.knightHigh(from);
+          break;
+        case KING:
+          low = BitBoard.kingLow(from); high = BitBoard.kingHigh(from);
+          break;
+        default://rook, bishop, queen attack along each ray up to the first piece
+          for(int r = BitBoard.firstRay(type), last = BitBoard.lastRay(type); r<last; r++){
+            for(byte square: BitBoard.ray(r,from)){
+              if(square<64) low |= 1L<<square; else high |= 1L<<square;
+              if(board[square]!=0) break;
+            }
+          }
+      }
+      attacks[2*i] = low; attacks[2*i+1] = high;
+      allLow |= low; allHigh |= high;
+    }
+    attacks[2*(PLAYERS*MAX_PIECES+colour)] = allLow;
+    attacks[2*(PLAYERS*MAX_PIECES+colour)+1] = allHigh;
+    return attacks;
+  }
+
+  /**
+   * Statically evaluates the exchange of pieces a move starts on its end position,
+   * without making any moves or copying the board.
+   * After the move, the players take turns, in turn order, to take the piece on the end position
+   * with their least valuable piece that attacks it, skipping a player who owns that piece or has no attacker.
+   * Pieces uncovered behind a capturing piece join in, and pawns reaching a back rank are promoted.
+   * A castling move moves its Rook first, which may then block or join in the exchange.
+   * The exchange stops when a King is taken or when neither of the other players can take the piece.
+   * Each player taking part only takes if it leaves them ahead, given how the rest of the exchange plays out,
+   * and a player who declines ends the exchange.
+   * Values are those of {@link PieceType#getValue()}.
+   * @param move the packed move, see {@link Move}. It is assumed to be legal.
+   * @return the change in material of the player making the move, once the exchange is resolved,
+   * which is negative if the moving piece is lost for less than it is worth.
+   * **/
+  public int staticExchange(int move){
+    int from = Move.getStartOrdinal(move), to = Move.getEndOrdinal(move);
+    if(board[from]==0) return 0;
+    Exchange scratch = exchange;
+    if(scratch==null){
+      scratch = new Exchange();
+      if(!frozen) exchange = scratch;//a snapshot may be read by several threads at once, so it keeps none
+    }
+    int[] candidates = scratch.candidates, pieces = scratch.pieces, capturer = scratch.capturer, owner = scratch.owner, gain = scratch.gain, loss = scratch.loss;
+    int[] outcome = scratch.outcome;
+    //the Rook a castling move moves along with the King, from its corner to beside the King
+    int rookFrom = -1, rookTo = -1;
+    if(Move.isCastle(move)){
+      boolean left = Position.get(to).getColumn()==2;
+      rookFrom = from+(left?-16:12); rookTo = rookFrom+(left?12:-8);
+    }
+    //the pieces of any colour that could reach the end position on an empty board
+    int count = 0;
+    for(int colour = 0; colour<PLAYERS; colour++){
+      for(int i = colour*MAX_PIECES, end = i+pieceCount[colour]; i<end; i++){
+        int square = pieceList[i];
+        if(square==rookFrom) square = rookTo;
+        int piece = square==rookTo?board[rookFrom]:board[square];
+        if(square!=from && reaches(piece,square,to)){
+          candidates[count] = square; pieces[count++] = piece;
+        }
+      }
+    }
+    long occupiedLow = bits.getOccupiedLow(), occupiedHigh = bits.getOccupiedHigh();
+    if(from<64) occupiedLow &= ~(1L<<from); else occupiedHigh &= ~(1L<<from);
+    if(rookFrom>=0){
+      if(rookFrom<64) occupiedLow &= ~(1L<<rookFrom); else occupiedHigh &= ~(1L<<rookFrom);
+      if(rookTo<64) occupiedLow |= 1L<<rookTo; else occupiedHigh |= 1L<<rookTo;
+    }
+    //play out the exchange, recording who takes what: the gain to the capturer and the loss to the piece's owner
+    int steps = 0, code = board[from], taken = board[to];
+    while(true){
+      int player = owner(code), promoted = promotes(code,to)?Piece.get(PieceType.QUEEN,Colour.get(player)).code():code;
+      int value = taken==0?0:Piece.fromCode(taken).getValue();
+      capturer[steps] = player; owner[steps] = owner(taken); loss[steps] = value;
+      gain[steps++] = value+Piece.fromCode(promoted).getValue()-Piece.fromCode(code).getValue();
+      if(taken!=0 && Piece.fromCode(taken).getType()==PieceType.KING) break;//the game is over
+      taken = promoted;
+      int best = -1;
+      for(int k = 1; k<PLAYERS && best<0; k++){//the next player to move who can take, in turn order
+        int next = (player+k)%PLAYERS;
+        for(int c = 0; c<count; c++){
+          int square = candidates[c];
+          if(square<0 || owner(pieces[c])!=next || !reachesThrough(pieces[c],square,to,occupiedLow,occupiedHigh)) continue;
+          if(best<0 || Piece.fromCode(pieces[c]).getValue()<Piece.fromCode(pieces[best]).getValue()) best = c;
+        }
+      }
+      if(best<0) break;
+      int square = candidates[best];
+      candidates[best] = -1;
+      if(square<64) occupiedLow &= ~(1L<<square); else occupiedHigh &= ~(1L<<square);
+      code = pieces[best];
+    }
+    //resolve backwards: each capture is only made if it leaves the capturer ahead
+    Arrays.fill(outcome,0);
+    for(int k = steps-1; k>0; k--){
+      if(outcome[capturer[k]]+gain[k]>0){
+        outcome[capturer[k]] += gain[k];
+        if(owner[k]>=0) outcome[owner[k]] -= loss[k];
+      }
+      else Arrays.fill(outcome,0);
+    }
+    return gain[0]+outcome[capturer[0]];
+  }
+
+  /** @return true if the piece with the given code, standing at square, could take on target on an empty board. **/
+  private static boolean reaches(int code, int square, int target){
+    Piece piece = Piece.fromCode(code);
+    Position from = Position.get(square);
+    switch(piece.getType()){
+      case PAWN: return BitBoard.contains(BitBoard.pawnAttackLow(piece.getColour(),from), BitBoard.pawnAttackHigh(piece.getColour(),from), target);
+      case KNIGHT: return BitBoard.contains(BitBoard.knightLow(from), BitBoard.knightHigh(from), target);
+      case KING: return BitBoard.contains(BitBoard.kingLow(from), BitBoard.kingHigh(from), target);
+      default:
+        for(int r = BitBoard.firstRay(piece.getType()), last = BitBoard.lastRay(piece.getType()); r<last; r++)
+          if(BitBoard.contains(BitBoard.rayLow(r,from), BitBoard.rayHigh(r,from), target)) return true;
+        return false;
+    }
+  }
+
+  /** @return true if the piece with the given code at square, which {@link #reaches(int,int,int)} target, can take there with the given positions occupied. **/
+  private static boolean reachesThrough(int code, int square, int target, long occupiedLow, long occupiedHigh){
+    PieceType type = Piece.fromCode(code).getType();
+    if(type==PieceType.PAWN || type==PieceType.KNIGHT || type==PieceType.KING) return true;
+    Position from = Position.get(square);
+    for(int r = BitBoard.firstRay(type), last = BitBoard.lastRay(type); r<last; r++){
+      if(!BitBoard.contains(BitBoard.rayLow(r,from), BitBoard.rayHigh(r,from), target)) continue;
+      for(byte s: BitBoard.ray(r,from)){
+        if(s==target) return true;
+        if(BitBoard.contains(occupiedLow, occupiedHigh, s)) break;
+      }
+    }
+    return false;
+  }
+
+  /** @return true if the piece with the given code is a pawn that would be promoted on reaching the target. **/
+  private static boolean promotes(int code, int target){
+    Piece piece = Piece.fromCode(code);
+    return piece.getType()==PieceType.PAWN && Position.get(target).getRow()==0 && Position.get(target).getColour()!=piece.getColour();
   }
   
   /**
@@ -101,23 +708,7 @@ public class Board implements Cloneable, Serializable {
    * @throws ImpossiblePositionException if the step takes piece off the board.
    * **/
   public Position step(Piece piece, Direction[] step, Position current) throws ImpossiblePositionException{
-    boolean reverse = false;
-    for(Direction d: step){
-      if((piece.getColour()!=current.getColour() && piece.getType() == PieceType.PAWN) || reverse){//reverse directions for knights
-        switch(d){
-          case FORWARD: d = Direction.BACKWARD; break;
-          case BACKWARD: d = Direction.FORWARD; break;
-          case LEFT: d = Direction.RIGHT; break;
-          case RIGHT: d = Direction.LEFT; break;
-        }
-      }
-      Position next = current.neighbour(d);
-      if(next.getColour()!= current.getColour()){//need to reverse directions when switching between sections of the board
-        reverse=true;
-      }
-      current = next;
-    }
-    return current;
+    return step(piece, step, current, false);
   }
 
   /**
@@ -134,24 +725,41 @@ public class Board implements Cloneable, Serializable {
    * @throws ImpossiblePositionException if the step takes piece off the board.
    * **/
   public Position step(Piece piece, Direction[] step, Position current, boolean reverse) throws ImpossiblePositionException{
+    Position next = walk(piece, step, current, reverse);
+    if(next==null) throw new ImpossiblePositionException("Moved off board");
+    return next;
+  }
+
+  /**
+   * Performs one step of a move, exactly as {@link #step(Piece,Direction[],Position,boolean)},
+   * but returns null instead of throwing an exception if the step takes the piece off the board.
+   * The step is made using precomputed neighbour tables, so it is cheap enough for move generation.
+   * @param piece the piece being moved
+   * @param step an array of the direction sequence in the step
+   * @param current the starting position of the step.
+   * @param reverse whether the steps out to be reversed (if the piece crosses board section).
+   * @return the position at the end of the step, or null if the step goes off the board.
+   * **/
+  public Position tryStep(Piece piece, Direction[] step, Position current, boolean reverse){
+    return walk(piece, step, current, reverse);
+  }
+
+  /** 
+   * The implementation of {@link #tryStep(Piece,Direction[],Position,boolean)}, 
+   * which depends only on the piece and positions, not on the state of a board.
+   * **/
+  static Position walk(Piece piece, Direction[] step, Position current, boolean reverse){
+    boolean pawn = piece.getType()==PieceType.PAWN;
     for(Direction d: step){
-      if((piece.getColour()!=current.getColour() && piece.getType() == PieceType.PAWN) || reverse){//reverse directions for knights
-        switch(d){
-          case FORWARD: d = Direction.BACKWARD; break;
-          case BACKWARD: d = Direction.FORWARD; break;
-          case LEFT: d = Direction.RIGHT; break;
-          case RIGHT: d = Direction.LEFT; break;
-        }
-      }
-      Position next = current.neighbour(d);
-      if(next.getColour()!= current.getColour()){//need to reverse directions when switching between sections of the board
-        reverse=true;
-      }
+      //pawns reverse direction in other sections, and everything reverses once it has switched sections
+      Position next = current.tryNeighbour(d, reverse || (pawn && piece.getColour()!=current.getColour()));
+      if(next==null) return null;
+      if(next.getColour()!=current.getColour()) reverse=true;
       current = next;
     }
     return current;
   }
-  
+
   /**
    * Checks if a move is legal. 
    * The move is specified by the start position (where the moving piece begins),
@@ -166,88 +774,234 @@ public class Board implements Cloneable, Serializable {
    * Note, en passant is not allowed, you can castle after King or rook have moved 
    * but they must have returned to their initial position, all pawns reaching the back row are promoted to Queen,
    * you may move into check, and you may leave your king in check, and you may castle across check.
+   * Once {@link #getLegalMoves()} has been called for a position, this is a lookup in the memoized moves,
+   * otherwise the move is checked directly, which is cheaper than finding every move when only one is asked about.
    * @param start the starting position of the piece
    * @param end the end position the piece intends to move to
    * @return true if and only if the move is legal in the rules of the game.
    * **/
   public boolean isLegalMove(Position start, Position end){
+    LegalMoves cached = legal;
+    if(cached!=null) return cached.contains(start.ordinal(), end.ordinal());
     Piece mover = getPiece(start);
     Piece target = getPiece(end);
     if(mover==null) return false;//you must move a piece
     Colour mCol =mover.getColour();
     if(mCol!=turn) return false;//it must be your turn
     if(target!= null && mCol==target.getColour())return false; //you can't take your own piece
-    Direction[][] steps = mover.getType().getSteps();
+    int e = end.ordinal();
     switch(mover.getType()){
-      case PAWN://note, there is no two step first move
-        for(int i = 0; i<steps.length; i++){
-          try{
-            if(end == step(mover,steps[i],start) && 
-                ((target==null && i==0) // 1 step forward, not taking
-                 || (target==null && i==1 // 2 steps forward, 
-                   && start.getColour()==mCol && start.getRow()==1 //must be in initial position
-                   && board.get(Position.get(mCol,2,start.getColumn()))==null)//and can't jump a piece 
-                 || (target!=null && i>1)//or taking diagonally
-                )
-              )
-              return true;
-          }catch(ImpossiblePositionException e){}//do nothing, steps went off board.
-        }
-        break;
+      case PAWN:
+        if(target!=null)//taking diagonally
+          return BitBoard.contains(BitBoard.pawnAttackLow(mCol,start), BitBoard.pawnAttackHigh(mCol,start), e);
+        if(BitBoard.contains(BitBoard.pawnPushLow(mCol,start), BitBoard.pawnPushHigh(mCol,start), e))
+          return true;// 1 step forward, not taking
+        return BitBoard.contains(BitBoard.pawnDoubleLow(mCol,start), BitBoard.pawnDoubleHigh(mCol,start), e)// 2 steps forward from the initial position
+          && board[start.ordinal()+1]==0;//and can't jump a piece
       case KNIGHT:
-        for(int i = 0; i<steps.length; i++){
-          try{
-            if(end == step(mover, steps[i],start))
-              return true;
-          }catch(ImpossiblePositionException e){}//do nothing, steps went off board.
-        }
-        break;
+        return BitBoard.contains(BitBoard.knightLow(start), BitBoard.knightHigh(start), e);
       case KING://note, you can move into check or remain in check. You may also castle across check
-        for(int i = 0; i<steps.length; i++){
-          try{
-            if(end == step(mover, steps[i],start))
-              return true;
-          }catch(ImpossiblePositionException e){}//do nothing, steps went off board.
-        }
+        if(BitBoard.contains(BitBoard.kingLow(start), BitBoard.kingHigh(start), e))
+          return true;
         //castling: Must have king and rook in their original positions, although they may have moved
         try{
           if(start==Position.get(mCol,0,4)){
             if(end==Position.get(mCol,0,6)){
-              Piece castle = board.get(Position.get(mCol,0,7));
-              Piece empty1 = board.get(Position.get(mCol,0,5));
-              Piece empty2 = board.get(Position.get(mCol,0,6));
+              Piece castle = getPiece(Position.get(mCol,0,7));
+              Piece empty1 = getPiece(Position.get(mCol,0,5));
+              Piece empty2 = getPiece(Position.get(mCol,0,6));
               if(castle!=null && castle.getType()==PieceType.ROOK && castle.getColour()==mover.getColour()
                   && empty1==null && empty2==null)
                 return true;
             }
             if(end==Position.get(mCol,0,2)){
-              Piece castle = board.get(Position.get(mCol,0,0));
-              Piece empty1 = board.get(Position.get(mCol,0,1));
-              Piece empty2 = board.get(Position.get(mCol,0,2));
-              Piece empty3 = board.get(Position.get(mCol,0,3));
+              Piece castle = getPiece(Position.get(mCol,0,0));
+              Piece empty1 = getPiece(Position.get(mCol,0,1));
+              Piece empty2 = getPiece(Position.get(mCol,0,2));
+              Piece empty3 = getPiece(Position.get(mCol,0,3));
               if(castle!=null && castle.getType()==PieceType.ROOK && castle.getColour()==mover.getColour()
                   && empty1==null && empty2==null && empty3==null)
                 return true;
             }
           }
-        }catch(ImpossiblePositionException e){}//do nothing, all positions possible here.
+        }catch(ImpossiblePositionException ex){}//do nothing, all positions possible here.
         break;
-      default://rook, bishop, queen, just need to check that one of their steps is iterated.
-        for(int i = 0; i<steps.length; i++){
-          Direction[] step = steps[i];
-          try{
-            Position tmp = step(mover,step,start);
-            while(end != tmp && board.get(tmp)==null){
-              tmp = step(mover, step, tmp, tmp.getColour()!=start.getColour());
-            }
-            if(end==tmp) return true;
-          }catch(ImpossiblePositionException e){}//do nothing, steps went off board.
+      default://rook, bishop, queen, just need to check that end is on one of their rays with nothing in between.
+        for(int r = BitBoard.firstRay(mover.getType()), last = BitBoard.lastRay(mover.getType()); r<last; r++){
+          if(!BitBoard.contains(BitBoard.rayLow(r,start), BitBoard.rayHigh(r,start), e)) continue;
+          for(byte square: BitBoard.ray(r,start)){
+            if(square==e) return true;
+            if(board[square]!=0) break;
+          }
         }
         break;
     }
     return false;//move did not match any legal option.
   }
 
+  /**
+   * Finds the end positions of all legal moves for the piece at a position.
+   * The positions are those for which {@link #isLegalMove(Position,Position)} would be true.
+   * This is a convenience over {@link #generateLegalMoves(Position,int[],int)}, which does not allocate.
+   * @param start the position of the piece to move.
+   * @param targets an array to fill with the end positions. An array of length 96 is always large enough.
+   * @return the number of end positions written to the array, 
+   * which is 0 if there is no piece at start or it is not that piece's turn.
+   * **/
+  public int getLegalTargets(Position start, Position[] targets){
+    int[] moves = new int[SIZE];
+    int count = generateLegalMoves(start,moves,0);
+    for(int i = 0; i<count; i++) targets[i] = Position.get(Move.getEndOrdinal(moves[i]));
+    return count;
+  }
+
+  /**
+   * Gets all the legal moves of the player whose turn it is.
+   * The moves are found once per position and memoized until the next move is made,
+   * and boards cloned from this one share them,
+   * so after the first call this and {@link #isLegalMove(Position,Position)} are lookups.
+   * @return a read only list of the moves, each a two element array of the start position and the end position.
+   * **/
+  public List<Position[]> getLegalMoves(){
+    return legalMoves().list;
+  }
+
+  /**
+   * Gets the number of legal moves of the player whose turn it is, memoized as in {@link #getLegalMoves()}.
+   * @return the number of legal moves.
+   * **/
+  public int getLegalMoveCount(){
+    return legalMoves().moves.length;
+  }
+
+  /**
+   * Gets one of the legal moves of the player whose turn it is, memoized as in {@link #getLegalMoves()}.
+   * @param index the index of the move, in the same order as {@link #getLegalMoves()}.
+   * @return the packed move, see {@link Move}.
+   * @throws ArrayIndexOutOfBoundsException if the index does not correspond to a move.
+   * **/
+  public int getLegalMove(int index){
+    return legalMoves().moves[index];
+  }
+
+  /** @return the memoized legal moves of the current position, finding them if need be. **/
+  private LegalMoves legalMoves(){
+    LegalMoves cached = legal;
+    if(cached==null){
+      int[] moves = new int[Move.MAX_MOVES];
+      cached = new LegalMoves(Arrays.copyOf(moves, generateLegalMoves(moves)));
+      legal = cached;
+    }
+    return cached;
+  }
+
+  /**
+   * Generates all the legal moves of the player whose turn it is, as packed moves (see {@link Move}),
+   * without allocating any objects.
+   * @param moves the buffer to fill with moves. A buffer of length {@link Move#MAX_MOVES} is always large enough.
+   * @return the number of moves written to the buffer.
+   * **/
+  public int generateLegalMoves(int[] moves){
+    int count = 0;
+    for(long own = bits.getLow(turn); own!=0; own &= own-1)
+      count = generateLegalMoves(Position.get(Long.numberOfTrailingZeros(own)),moves,count);
+    for(long own = bits.getHigh(turn); own!=0; own &= own-1)
+      count = generateLegalMoves(Position.get(64+Long.numberOfTrailingZeros(own)),moves,count);
+    return count;
+  }
+
+  /**
+   * Generates the legal moves of the piece at a position, as packed moves (see {@link Move}).
+   * The moves are those for which {@link #isLegalMove(Position,Position)} would be true,
+   * found by masking the precomputed moves of the piece against the occupied positions,
+   * rather than by testing each end position in turn.
+   * @param start the position of the piece to move.
+   * @param moves the buffer to add the moves to. 96 free entries are always enough for one piece.
+   * @param count the number of moves already in the buffer, the new moves are added after them.
+   * @return the number of moves in the buffer after adding the new moves,
+   * which is unchanged if there is no piece at start or it is not that piece's turn.
+   * **/
+  public int generateLegalMoves(Position start, int[] moves, int count){
+    Piece mover = getPiece(start);
+    if(mover==null || mover.getColour()!=turn) return count;
+    Colour mCol = mover.getColour();
+    long freeLow = ~bits.getOccupiedLow(), freeHigh = ~bits.getOccupiedHigh();
+    long notOwnLow = ~bits.getLow(mCol), notOwnHigh = ~bits.getHigh(mCol);
+    long low = 0, high = 0;
+    switch(mover.getType()){
+      case PAWN:
+        low = BitBoard.pawnPushLow(mCol,start) & freeLow;
+        high = BitBoard.pawnPushHigh(mCol,start) & freeHigh;
+        long doubleLow = BitBoard.pawnDoubleLow(mCol,start), doubleHigh = BitBoard.pawnDoubleHigh(mCol,start);
+        if((doubleLow|doubleHigh)!=0 && board[start.ordinal()+1]==0){
+          low |= doubleLow & freeLow;
+          high |= doubleHigh & freeHigh;
+        }
+        low |= BitBoard.pawnAttackLow(mCol,start) & ~freeLow & notOwnLow;
+        high |= BitBoard.pawnAttackHigh(mCol,start) & ~freeHigh & notOwnHigh;
+        break;
+      case KNIGHT:
+        low = BitBoard.knightLow(start) & notOwnLow;
+        high = BitBoard.knightHigh(start) & notOwnHigh;
+        break;
+      case KING:
+        low = BitBoard.kingLow(start) & notOwnLow;
+        high = BitBoard.kingHigh(start) & notOwnHigh;
+        try{
+          if(start==Position.get(mCol,0,4)){
+            for(int column = 2; column<=6; column+=4){//castling left and right
+              int square = Position.get(mCol,0,column).ordinal();
+              if(isLegalMove(start,Position.get(square))){
+                if(square<64) low |= 1L<<square; else high |= 1L<<square;
+              }
+            }
+          }
+        }catch(ImpossiblePositionException ex){}//do nothing, all positions possible here.
+        break;
+      default://rook, bishop, queen follow each of their rays until blocked
+        for(int r = BitBoard.firstRay(mover.getType()), last = BitBoard.lastRay(mover.getType()); r<last; r++){
+          for(byte square: BitBoard.ray(r,start)){
+            int code = board[square];
+            if(owner(code)==mCol.ordinal()) break;
+            if(square<64) low |= 1L<<square; else high |= 1L<<square;
+            if(code!=0) break;//captures end the move
+          }
+        }
+    }
+    for(; low!=0; low &= low-1) moves[count++] = encode(start,mover,Long.numberOfTrailingZeros(low));
+    for(; high!=0; high &= high-1) moves[count++] = encode(start,mover,64+Long.numberOfTrailingZeros(high));
+    return count;
+  }
+
+  /**
+   * Packs a move for this position, setting the capture, promotion and castling flags as the move would play.
+   * The move does not have to be legal.
+   * @param start the starting position of the move
+   * @param end the ending position of the move
+   * @return the packed move.
+   * **/
+  public int encodeMove(Position start, Position end){
+    Piece mover = getPiece(start);
+    return mover==null?Move.encode(start,end):encode(start,mover,end.ordinal());
+  }
+
+  /** Packs a move of the given piece, with flags. **/
+  private int encode(Position start, Piece mover, int end){
+    int move = start.ordinal() | end<<7;
+    if(board[end]!=0) move |= Move.CAPTURE;
+    Position to = Position.get(end);
+    switch(mover.getType()){
+      case PAWN:
+        if(to.getRow()==0 && to.getColour()!=mover.getColour()) move |= Move.PROMOTION;
+        break;
+      case KING:
+        if(start.getColumn()==4 && start.getRow()==0 && (to.getColumn()==2 || to.getColumn()==6)) move |= Move.CASTLE;
+        break;
+      default:
+    }
+    return move;
+  }
+
   /**
    * Executes a legal move. 
    * If a piece is taken it is replaced at that position by the taking piece.
@@ -259,36 +1013,7 @@ public class Board implements Cloneable, Serializable {
    * @throws ImpossiblePositionException if the move is not legal
    * **/ 
   public void move(Position start, Position end, int time) throws ImpossiblePositionException{
-    if(isLegalMove(start,end)){
-      Piece mover = board.get(start);
-      Piece taken = board.get(end);
-      timeLeft.put(mover.getColour(),timeLeft.get(mover.getColour())-time);
-      if(timeLeft.get(mover.getColour())<0) gameOver=true;
-      else{
-        board.remove(start);//empty start square
-        if(mover.getType()==PieceType.PAWN && end.getRow()==0 && end.getColour()!=mover.getColour())
-          board.put(end, new Piece(PieceType.QUEEN, mover.getColour()));//promote pawn if back rank
-        else board.put(end,mover);//move piece
-        if(mover.getType()==PieceType.KING && start.getColumn()==4 && start.getRow()==0){
-          if(end.getColumn()==2){//castle left, update rook
-            Position rookPos = Position.get(mover.getColour(),0,0);
-            board.put(Position.get(mover.getColour(),0,3),board.get(rookPos));
-            board.remove(rookPos);
-          }else if(end.getColumn()==6){//castle right, update rook
-            Position rookPos = Position.get(mover.getColour(),0,7);
-            board.put(Position.get(mover.getColour(),0,5),board.get(rookPos));
-            board.remove(rookPos);
-         }
-        }
-        history.add(new Position[]{start,end});
-        if(taken !=null){
-          captured.get(mover.getColour()).add(taken);
-          if(taken.getType()==PieceType.KING) gameOver=true;
-        }
-        turn = Colour.values()[(turn.ordinal()+1)%3];
-      }
-    }
-    else throw new ImpossiblePositionException("Illegal Move: "+start+"-"+end);
+    makeMove(start,end,time);
   }
 
   /**
@@ -304,7 +1029,145 @@ public class Board implements Cloneable, Serializable {
   public void move(Position start, Position end) throws ImpossiblePositionException{
     move(start,end,0);
   }
+
+  /**
+   * Executes a legal move in place, exactly as {@link #move(Position,Position,int)},
+   * and returns a compact record of the state it changed, so that {@link #unmakeMove(long)} can undo it.
+   * This allows a search to walk a single board up and down the game tree rather than cloning it for each position.
+   * @param start the starting position of the move
+   * @param end the ending position of the move
+   * @param time the number of milliseconds taken to play the move
+   * @return the undo record for the move.
+   * @throws ImpossiblePositionException if the move is not legal
+   * **/
+  public long makeMove(Position start, Position end, int time) throws ImpossiblePositionException{
+    modify();
+    if(!isLegalMove(start,end)) throw new ImpossiblePositionException("Illegal Move: "+start+"-"+end);
+    Piece mover = getPiece(start);
+    int taken = board[end.ordinal()];
+    int colour = mover.getColour().ordinal();
+    long undo = start.ordinal() | end.ordinal()<<UNDO_END | taken<<UNDO_TAKEN 
+      | (gameOver?UNDO_GAME_OVER:0) | (long) time<<UNDO_TIME;
+    addTime(colour,-time);
+    if(timeLeft[colour]<0){
+      gameOver=true;
+      settle();
+      return undo;
+    }
+    set(start.ordinal(),0);//empty start square
+    if(mover.getType()==PieceType.PAWN && end.getRow()==0 && end.getColour()!=mover.getColour()){
+      set(end.ordinal(),Piece.get(PieceType.QUEEN, mover.getColour()).code());//promote pawn if back rank
+      undo |= UNDO_PROMOTED;
+    }
+    else set(end.ordinal(),mover.code());//move piece
+    if(mover.getType()==PieceType.KING && start.getColumn()==4 && start.getRow()==0){
+      if(end.getColumn()==2){//castle left, update rook
+        undo |= castle(colour,0,3) | UNDO_CASTLE_LEFT;
+      }else if(end.getColumn()==6){//castle right, update rook
+        undo |= castle(colour,7,5) | UNDO_CASTLE_RIGHT;
+      }
+    }
+    if(taken !=0){
+      capture(colour,taken);
+      if(Piece.fromCode(taken).getType()==PieceType.KING) gameOver=true;
+    }
+    setTurn(Colour.get((turn.ordinal()+1)%3));
+    history = new History(history,start,end,key,taken==0 && mover.getType()!=PieceType.PAWN);
+    if(!gameOver && (quietLimit>0 && history.quiet>=quietLimit 
+        || repetitionLimit>0 && getRepetitions()>=repetitionLimit))
+      gameOver = true;//drawn
+    if(!gameOver && adjudicator!=null && (adjudicated = adjudicator.adjudicate(this))!=null)
+      gameOver = true;
+    if(gameOver) settle();
+    return undo | UNDO_MOVED;
+  }
+
+  /**
+   * Executes a legal move in place, for untimed games.
+   * @param start the starting position of the move
+   * @param end the ending position of the move
+   * @return the undo record for the move.
+   * @throws ImpossiblePositionException if the move is not legal
+   * @see #makeMove(Position,Position,int)
+   * **/
+  public long makeMove(Position start, Position end) throws ImpossiblePositionException{
+    return makeMove(start,end,0);
+  }
+
+  /**
+   * Executes a legal packed move in place, for untimed games.
+   * @param move the packed move, see {@link Move}. Its flags are ignored.
+   * @return the undo record for the move.
+   * @throws ImpossiblePositionException if the move is not legal
+   * @see #makeMove(Position,Position,int)
+   * **/
+  public long makeMove(int move) throws ImpossiblePositionException{
+    return makeMove(Position.get(Move.getStartOrdinal(move)),Position.get(Move.getEndOrdinal(move)),0);
+  }
+
+  /** 
+   * Moves the rook of a colour on its back row for castling.
+   * @return the undo bits recording the code of any piece the rook replaced.
+   * **/
+  private long castle(int colour, int fromColumn, int toColumn){
+    int from = 32*colour+4*fromColumn, to = 32*colour+4*toColumn;
+    long replaced = board[to];
+    int rook = board[from];
+    set(from,0);//empty the square first, so a player never has more than MAX_PIECES pieces listed
+    set(to,rook);
+    return replaced<<UNDO_REPLACED;
+  }
+
+  /**
+   * Reverses the most recent move made with {@link #makeMove(Position,Position,int)} (or {@link #move(Position,Position,int)}),
+   * restoring the pieces, including promoted pawns and castled rooks, the captures, clocks, history, turn and game over flag.
+   * Moves must be undone in the reverse of the order they were made.
+   * @param undo the undo record returned when the move was made.
+   * **/
+  public void unmakeMove(long undo){
+    modify();
+    int start = (int) undo & UNDO_SQUARE, end = (int) (undo>>>UNDO_END) & UNDO_SQUARE;
+    int taken = (int) (undo>>>UNDO_TAKEN) & UNDO_CODE;
+    gameOver = (undo & UNDO_GAME_OVER)!=0;
+    if(!gameOver) adjudicated = null;
+    if((undo & UNDO_MOVED)!=0){
+      setTurn(Colour.get((turn.ordinal()+2)%3));
+      int code = board[end];
+      Piece mover = Piece.fromCode(code);
+      int colour = mover.getColour().ordinal();
+      if(taken!=0) uncapture(colour);
+      history = history.previous;
+      if((undo & (UNDO_CASTLE_LEFT|UNDO_CASTLE_RIGHT))!=0){
+        int rook = 32*colour+((undo & UNDO_CASTLE_LEFT)!=0?0:28), to = rook+((undo & UNDO_CASTLE_LEFT)!=0?12:-8);
+        int rookCode = board[to];
+        set(to,(int) (undo>>>UNDO_REPLACED) & UNDO_CODE);
+        set(rook,rookCode);
+      }
+      if((undo & UNDO_PROMOTED)!=0) code = Piece.get(PieceType.PAWN,mover.getColour()).code();
+      set(end,taken);
+      set(start,code);
+      addTime(colour,(int) (undo>>>UNDO_TIME));
+    }
+    else addTime(getPiece(Position.get(start)).getColour().ordinal(),(int) (undo>>>UNDO_TIME));
+    settle();
+  }
+
+  /** Adds to a player's remaining time, which untimed moves leave alone so that they do not copy a shared clock. **/
+  private void addTime(int colour, int time){
+    if(time==0) return;
+    if((shared & SHARED_CLOCKS)!=0) own(SHARED_CLOCKS);
+    timeLeft[colour] += time;
+  }
   
+  /** Changes the player to move, keeping the keys up to date. **/
+  private void setTurn(Colour colour){
+    key ^= TURN_KEYS[turn.ordinal()]^TURN_KEYS[colour.ordinal()];
+    rotatedKey1 ^= TURN_KEYS[(turn.ordinal()+1)%3]^TURN_KEYS[(colour.ordinal()+1)%3];
+    rotatedKey2 ^= TURN_KEYS[(turn.ordinal()+2)%3]^TURN_KEYS[(colour.ordinal()+2)%3];
+    turn = colour;
+    legal = null;
+  }
+
   /**
    * Gets the player whose turn it currently is
    * @return the colour of the player whose turn it is.
@@ -318,7 +1181,7 @@ public class Board implements Cloneable, Serializable {
    * @return the number of moves made in the game.
    * **/
   public int getMoveCount(){
-    return history.size();
+    return history==null?0:history.size;
   }
 
   /**
@@ -329,11 +1192,72 @@ public class Board implements Cloneable, Serializable {
    * **/
   public Position[] getMove(int index){
     if(0<=index && index<getMoveCount()){
-      return history.get(index).clone();
+      History[] entries = moveIndex;
+      if(entries==null || entries.length<history.size || entries[history.size-1]!=history) moveIndex = entries = history.toArray(entries);
+      History move = entries[index];
+      return new Position[]{move.start,move.end};
     }
     else throw new ArrayIndexOutOfBoundsException("Index out of bounds.");
   }
 
+  /**
+   * Counts how many times the current position has occurred in the game, including now.
+   * Positions are compared by key (see {@link #getKey()}), so they match if the same pieces are on the same positions
+   * with the same player to move. Only positions since the last capture or pawn move can match, 
+   * as those moves can never be reversed, and positions from before a board was decoded are not known.
+   * @return the number of occurrences of the current position, at least 1.
+   * **/
+  public int getRepetitions(){
+    int count = 1;
+    if(history==null) return count;
+    History entry = history;
+    //only every third position has the same player to move
+    for(int back = 3; back<=history.quiet; back += 3){
+      entry = entry.previous.previous;
+      long earlier = back==history.size?initialKey:(entry = entry.previous).key;
+      if(earlier==key) count++;
+    }
+    return count;
+  }
+
+  /**
+   * Gets the number of quiet moves played in a row, that is moves that were neither captures nor pawn moves.
+   * @return the number of quiet moves since the last capture or pawn move, or since the start of the game.
+   * **/
+  public int getQuietMoves(){
+    return history==null?0:history.quiet;
+  }
+
+  /**
+   * Sets the rules under which the game is drawn, bounding games that would otherwise never end.
+   * After a move, if the position has occurred the given number of times, 
+   * or the given number of quiet moves have been played in a row (see {@link #getQuietMoves()}),
+   * the game is over with no winner or loser. 
+   * The rules are kept by clones, so searches and rollouts on a copy of a board follow them too.
+   * @param repetitions the number of occurrences of a position that draws the game, for example 3, or 0 for no limit.
+   * @param quietMoves the number of quiet moves in a row that draws the game, or 0 for no limit.
+   * **/
+  public void setDrawRule(int repetitions, int quietMoves){
+    modify();
+    repetitionLimit = repetitions;
+    quietLimit = quietMoves;
+  }
+
+  /**
+   * Sets a rule that may end the game after each move, for example when it has gone on too long.
+   * Adjudication only happens after moves made from now on, and the rule is kept by clones.
+   * @param adjudicator the rule to consult after each move, or null for none.
+   * **/
+  public void setAdjudicator(Adjudicator adjudicator){
+    modify();
+    this.adjudicator = adjudicator;
+  }
+
+  /** @return the player an adjudicator decided had lost, if it ended the game, otherwise null. **/
+  public Colour getAdjudicated(){
+    return adjudicated;
+  }
+
   /**
    * Calculates a players score, used for some variants of the game.
    * The score is the combined piece values of the players pieces on the board,
@@ -345,13 +1269,7 @@ public class Board implements Cloneable, Serializable {
    * @return the score of the player.
    * **/
   public int score(Colour player){
-    int score = 0;
-    for(Position p: Position.values()){
-      Piece piece = board.get(p);
-      if(piece!=null && piece.getColour()==player) score+=piece.getValue();
-    }
-    for(Piece piece: captured.get(player)) score+=piece.getValue();  
-    return score;
+    return material[player.ordinal()]+capturedValue[player.ordinal()];
   }
 
   /** 
@@ -363,45 +1281,55 @@ public class Board implements Cloneable, Serializable {
 
   /**
    * The winner of the game is the player who takes another player's King,
-   * or the player with the highest score when another player runs out of time.
+   * or the player with the highest score when another player runs out of time or loses by adjudication.
+   * A game drawn under {@link #setDrawRule(int,int)} has no winner.
    * @return the winner of the game or null if it's a draw or not yet decided.
    * **/
   public Colour getWinner(){
-    if(gameOver){
-      for(Colour c: Colour.values()){
-        for(Piece taken: captured.get(c)){
-          if(taken.getType()==PieceType.KING) return c;
-        }
-        if(timeLeft.get(c)<0){
-          Colour winner = null; int max = Integer.MIN_VALUE;
-          for(Colour d: Colour.values()){
-            int score = score(d);
-            if(d!=c && score>max){
-              winner = d; max = score;
-            }
-          }
-          return winner;
-        }
-      }
-    }
-    return null;
+    return winner;
   }
 
   /**
    * The loser of the game is the player who had their King taken,
-   * or the player who ran out of time.
+   * or the player who ran out of time, or the player an {@link Adjudicator} decided had lost.
+   * A game drawn under {@link #setDrawRule(int,int)} has no loser.
    * @return the loser of the game or null if its a draw or not yet decided.
    * **/
   public Colour getLoser(){
-    if(gameOver){
-      for(Colour c: Colour.values()){
-        for(Piece taken: captured.get(c)){
-          if(taken.getType()==PieceType.KING) return taken.getColour();
-        }
-        if(timeLeft.get(c)<0) return c;
+    return loser;
+  }
+
+  /** Decides the winner and loser from the captures, clocks and scores, called whenever the game may have ended or resumed. **/
+  private void settle(){
+    winner = null; loser = null;
+    if(!gameOver) return;
+    for(int i = 0; i<PLAYERS; i++){
+      Colour c = Colour.get(i);
+      int index = kingTaken[i];
+      if(index!=MAX_CAPTURES){
+        winner = c;
+        loser = Piece.fromCode(captured[c.ordinal()*MAX_CAPTURES+index]).getColour();
+        return;
+      }
+      if(timeLeft[c.ordinal()]<0){
+        settle(c);
+        return;
       }
     }
-    return null;
+    if(adjudicated!=null) settle(adjudicated);
+  }
+
+  /** Settles a game the given player has lost other than by losing their King, so the other player with the highest score wins. **/
+  private void settle(Colour lost){
+    int max = Integer.MIN_VALUE;
+    for(int i = 0; i<PLAYERS; i++){
+      Colour d = Colour.get(i);
+      int score = score(d);
+      if(d!=lost && score>max){
+        winner = d; max = score;
+      }
+    }
+    loser = lost;
   }
 
   /**
@@ -409,22 +1337,180 @@ public class Board implements Cloneable, Serializable {
    * @return the time remaining, in milliseconds.
    * **/
   public int getTimeLeft(Colour colour){
-    return timeLeft.get(colour);
+    return timeLeft[colour.ordinal()];
+  }
+
+  /**
+   * Gets the 64 bit Zobrist key of the position, which is updated incrementally as moves are made and undone.
+   * The key covers the piece, colour and position of every piece, and the player to move.
+   * Castling needs no extra state in this variant, as it only depends on where the King and Rook stand.
+   * Equal positions always have equal keys, and different positions almost always have different keys,
+   * so the key is suitable for transposition tables, repetition detection and other caches.
+   * @return the key of the current position.
+   * **/
+  public long getKey(){
+    return key;
+  }
+
+  /**
+   * Gets the key the position would have if it were rotated round the board (see {@link Symmetry}),
+   * which is maintained as moves are made, so rotated positions can be looked up without building them.
+   * @param rotation the number of sections to rotate by, 0, 1 or 2.
+   * @return the key of the rotated position, equal to {@link #getKey()} of the board {@link Symmetry#rotate(Board,int)} returns.
+   * **/
+  public long getKey(int rotation){
+    switch(rotation){
+      case 0: return key;
+      case 1: return rotatedKey1;
+      case 2: return rotatedKey2;
+      default: throw new IllegalArgumentException("Rotation must be 0, 1 or 2: "+rotation);
+    }
+  }
+
+  /**
+   * Gets the key of the position rotated so that Blue is to move (see {@link Symmetry#canonical(Board)}).
+   * Positions that are the same up to rotation have the same canonical key,
+   * so caches keyed on it share entries between the three players.
+   * @return the canonical key of the position.
+   * **/
+  public long getCanonicalKey(){
+    return getKey(Symmetry.canonicalRotation(turn));
+  }
+
+  /** @return a hash code derived from the position's key. **/
+  @Override
+  public int hashCode(){
+    return (int) (key^(key>>>32));
+  }
+
+  /**
+   * Boards are equal if they have the same pieces at the same positions and the same player to move.
+   * The history of moves, captured pieces and remaining time are not compared.
+   * @param o the object to compare to.
+   * @return true if o is a board with the same position.
+   * **/
+  @Override
+  public boolean equals(Object o){
+    if(!(o instanceof Board)) return false;
+    Board other = (Board) o;
+    return key==other.key && turn==other.turn && Arrays.equals(board,other.board);
+  }
+
+  /**
+   * Serializes the board in the compact format of {@link BoardCodec}, rather than field by field.
+   * @param out the stream to write to.
+   * @throws IOException if the stream cannot be written to.
+   * **/
+  private void writeObject(ObjectOutputStream out) throws IOException{
+    out.defaultWriteObject();
+    ByteBuffer buffer = ByteBuffer.allocate(BoardCodec.maxSize(this));
+    BoardCodec.write(this,buffer);
+    out.writeInt(buffer.position());
+    out.write(buffer.array(),0,buffer.position());
+  }
+
+  /**
+   * Deserializes a board written by {@link #writeObject(ObjectOutputStream)}.
+   * @param in the stream to read from.
+   * @throws IOException if the stream cannot be read, or does not hold a valid board.
+   * **/
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+    in.defaultReadObject();
+    byte[] data = new byte[in.readInt()];
+    in.readFully(data);
+    init();
+    try{
+      BoardCodec.read(ByteBuffer.wrap(data),this);
+    }catch(IllegalArgumentException|java.nio.BufferUnderflowException e){
+      throw new InvalidObjectException("Invalid board data: "+e.getMessage());
+    }
   }
 
   /**
    * Returns a deep clone of the board state, 
    * such that no operations will affect the original board instance.
+   * The history of moves is immutable, so it is shared rather than copied.
+   * A clone of a read only snapshot (see {@link #snapshot()}) can be changed.
    * @return a deep clone of the board state.
    * **/ 
   public Object clone() throws CloneNotSupportedException{
     Board clone = (Board) super.clone();
-    clone.board = (HashMap<Position,Piece>)board.clone();
-    clone.history = new ArrayList<Position[]>();
-    for(Position[] move: history) clone.history.add(move.clone());
-    clone.timeLeft = (HashMap<Colour,Integer>) timeLeft.clone();
-    clone.captured = new HashMap<Colour,ArrayList<Piece>>();
-    for(Colour c: Colour.values()) clone.captured.put(c, (ArrayList<Piece>) captured.get(c).clone());
+    clone.frozen = false;
+    clone.exchange = null;
+    clone.shared = SHARED_ALL;
+    clone.own(SHARED_ALL);
     return clone;
   }
+
+  /**
+   * Gives the board its own copy of the groups of arrays it shares with a snapshot, so that it can write to them.
+   * The attack maps are not copied if none are up to date, as they will be rebuilt anyway.
+   * @param groups the SHARED flags of the groups to copy, which are skipped if they are not shared.
+   * **/
+  private void own(int groups){
+    groups &= shared;
+    if((groups & SHARED_PLACEMENT)!=0){
+      board = board.clone();
+      bits = bits.clone();
+      pieceList = pieceList.clone();
+      pieceCount = pieceCount.clone();
+      pieceIndex = pieceIndex.clone();
+      material = material.clone();
+    }
+    if((groups & SHARED_CAPTURES)!=0){
+      captured = captured.clone();
+      capturedCount = capturedCount.clone();
+      capturedValue = capturedValue.clone();
+      kingTaken = kingTaken.clone();
+    }
+    if((groups & SHARED_CLOCKS)!=0) timeLeft = timeLeft.clone();
+    if((groups & SHARED_ATTACKS)!=0) attacks = attacksValid==0?new long[attacks.length]:attacks.clone();
+    shared &= ~groups;
+  }
+
+  /**
+   * Takes a read only snapshot of the board, which is cheap to create as it copies nothing:
+   * the snapshot shares the board's arrays, and the board copies each group of them for itself just before it first writes to it,
+   * so a quiet move only copies the piece placement, and the captures and attack maps stay shared until they change.
+   * Every method of the snapshot that would change it throws an UnsupportedOperationException,
+   * so it can be handed to code that should not change the game, such as an agent choosing its move,
+   * and shared between threads once published to them.
+   * A snapshot of a snapshot is the snapshot itself.
+   * @return a read only board in the same position, with the same history, clocks, captures and rules.
+   * **/
+  public Board snapshot(){
+    if(frozen) return this;
+    try{
+      Board snapshot = (Board) super.clone();
+      snapshot.frozen = true;
+      snapshot.exchange = null;
+      shared = SHARED_ALL;
+      return snapshot;
+    }catch(CloneNotSupportedException e){throw new AssertionError(e);}
+  }
+
+  /**
+   * Makes a copy of the board that can be changed, for example to search ahead from a snapshot.
+   * This is the same as {@link #clone()}, without the checked exception.
+   * @return a new board in the same position, with the same history, clocks, captures and rules.
+   * **/
+  public Board mutableCopy(){
+    try{
+      return (Board) clone();
+    }catch(CloneNotSupportedException e){throw new AssertionError(e);}
+  }
+
+  /** @return true if the board is a read only snapshot, see {@link #snapshot()}. **/
+  public boolean isReadOnly(){
+    return frozen;
+  }
+
+  /**
+   * Checks that the board can be changed, called at the start of every method that changes it.
+   * Arrays shared with a snapshot are copied later, by the private methods that write to them.
+   * @throws UnsupportedOperationException if the board is a read only snapshot.
+   * **/
+  private void modify(){
+    if(frozen) throw new UnsupportedOperationException("A snapshot of a board cannot be changed, see mutableCopy()");
+  }
 }
@@ -0,0 +1,185 @@
+package threeChess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A compact, versioned binary format for boards, read and written directly on a ByteBuffer.
+ * The format is, in order:
+ * a version byte;
+ * a byte holding the player to move (bits 0-1), whether the game is over (bit 2),
+ * and one more than the player who lost by adjudication, or 0 (bits 3-4);
+ * 48 bytes giving the type of the piece at each of the 96 positions, 4 bits each, 0 for vacant,
+ * low nibble first, in ordinal order;
+ * the colours of the pieces on the board, 2 bits each in ordinal order, packed 4 to a byte;
+ * each player's remaining time as a zigzag varint;
+ * for each player, the number of pieces they have taken as a varint, then a byte per piece;
+ * the number of moves played as a varint, then each move as a varint of start+96*end.
+ * An untimed board in the initial position takes 69 bytes, and each move played adds about two more.
+ * **/
+public final class BoardCodec {
+
+  /** The current version of the format **/
+  public static final int VERSION = 1;
+
+  private BoardCodec(){}
+
+  /**
+   * An upper bound on the number of bytes {@link #write(Board,ByteBuffer)} writes for a board.
+   * @param board the board to be written.
+   * @return the most bytes the board could take.
+   * **/
+  public static int maxSize(Board board){
+    int size = 2+48+12+3*5;
+    for(int player = 0; player<3; player++) size += 5+board.getCapturedCount(Colour.get(player));
+    return size+5+3*board.getMoveCount();
+  }
+
+  /**
+   * Writes a board at the buffer's position, advancing the position past it.
+   * @param board the board to write.
+   * @param buffer the buffer to write to, which must have at least {@link #maxSize(Board)} bytes remaining.
+   * @throws java.nio.BufferOverflowException if the buffer does not have enough room.
+   * **/
+  public static void write(Board board, ByteBuffer buffer){
+    buffer.put((byte) VERSION);
+    Colour adjudicated = board.getAdjudicated();
+    buffer.put((byte) (board.getTurn().ordinal() | (board.gameOver()?4:0) | (adjudicated==null?0:adjudicated.ordinal()+1)<<3));
+    for(int i = 0; i<Board.SIZE; i+=2){
+      Piece low = board.getPiece(Position.get(i)), high = board.getPiece(Position.get(i+1));
+      buffer.put((byte) ((low==null?0:low.getType().ordinal()+1) | (high==null?0:high.getType().ordinal()+1)<<4));
+    }
+    int colours = 0, count = 0;
+    for(int i = 0; i<Board.SIZE; i++){
+      Piece piece = board.getPiece(Position.get(i));
+      if(piece==null) continue;
+      colours |= piece.getColour().ordinal()<<(2*count);
+      if(++count==4){
+        buffer.put((byte) colours);
+        colours = 0; count = 0;
+      }
+    }
+    if(count>0) buffer.put((byte) colours);
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      int time = board.getTimeLeft(c);
+      putVarint(buffer,(time<<1)^(time>>31));
+    }
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      int taken = board.getCapturedCount(c);
+      putVarint(buffer,taken);
+      for(int i = 0; i<taken; i++) buffer.put((byte) board.getCaptured(c,i).code());
+    }
+    putVarint(buffer,board.getMoveCount());
+    //the history links back from the latest move, so measure it, then write the moves backwards from the end
+    int length = 0;
+    for(History move = board.getHistory(); move!=null; move = move.previous) length += varintSize(encode(move));
+    int start = buffer.position(), end = start+length;
+    if(end>buffer.limit()) throw new java.nio.BufferOverflowException();
+    for(History move = board.getHistory(); move!=null; move = move.previous){
+      int value = encode(move);
+      buffer.position(end -= varintSize(value));
+      putVarint(buffer,value);
+    }
+    buffer.position(start+length);
+  }
+
+  /** @return a move from the history as a single int, start+96*end. **/
+  private static int encode(History move){
+    return move.start.ordinal()+Board.SIZE*move.end.ordinal();
+  }
+
+  /** @return the number of bytes {@link #putVarint(ByteBuffer,int)} writes for a value. **/
+  private static int varintSize(int value){
+    int size = 1;
+    while((value & ~0x7F)!=0){
+      size++;
+      value >>>= 7;
+    }
+    return size;
+  }
+
+  /**
+   * Reads a board from the buffer's position, advancing the position past it.
+   * @param buffer the buffer to read from.
+   * @return a new board in the position that was written.
+   * @throws IllegalArgumentException if the data is not a valid board of a known version.
+   * @throws java.nio.BufferUnderflowException if the data is truncated.
+   * **/
+  public static Board read(ByteBuffer buffer){
+    Board board = new Board();
+    read(buffer,board);
+    return board;
+  }
+
+  /**
+   * Reads a board from the buffer's position into an existing board, replacing its state entirely.
+   * @param buffer the buffer to read from.
+   * @param board the board to set up.
+   * @throws IllegalArgumentException if the data is not a valid board of a known version.
+   * @throws java.nio.BufferUnderflowException if the data is truncated.
+   * **/
+  public static void read(ByteBuffer buffer, Board board){
+    int version = buffer.get();
+    if(version!=VERSION) throw new IllegalArgumentException("Unknown board format version "+version);
+    int state = buffer.get();
+    if((state & 3)==3) throw new IllegalArgumentException("Invalid player to move");
+    if((state & ~0x1F)!=0) throw new IllegalArgumentException("Invalid state "+state);
+    board.clear();
+    int typesAt = buffer.position();
+    buffer.position(typesAt+Board.SIZE/2);//the colours follow the types
+    int colours = 0, count = 0;
+    for(int i = 0; i<Board.SIZE; i++){
+      int type = buffer.get(typesAt+i/2)>>>(4*(i&1)) & 0xF;
+      if(type==0) continue;
+      if(type>6) throw new IllegalArgumentException("Invalid piece type "+type);
+      if(count==0) colours = buffer.get();
+      int colour = colours>>>(2*count) & 3;
+      if(colour==3) throw new IllegalArgumentException("Invalid piece colour");
+      count = (count+1)&3;
+      board.place(Position.get(i),Piece.fromCode(6*colour+type));
+    }
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      int time = getVarint(buffer);
+      board.setTimeLeft(c,(time>>>1)^-(time&1));
+    }
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      int taken = getVarint(buffer);
+      for(int i = 0; i<taken; i++){
+        int code = buffer.get();
+        if(code<1 || code>18) throw new IllegalArgumentException("Invalid captured piece "+code);
+        board.addCaptured(c,Piece.fromCode(code));
+      }
+    }
+    int moves = getVarint(buffer);
+    for(int i = 0; i<moves; i++){
+      int move = getVarint(buffer);
+      if(move<0 || move>=Board.SIZE*Board.SIZE) throw new IllegalArgumentException("Invalid move "+move);
+      board.addHistory(Position.get(move%Board.SIZE),Position.get(move/Board.SIZE));
+    }
+    int adjudicated = state>>>3 & 3;
+    board.setState(Colour.get(state & 3),(state & 4)!=0,adjudicated==0?null:Colour.get(adjudicated-1));
+  }
+
+  /** Writes a non-negative int as a varint: 7 bits per byte, low bits first, with the top bit set on all but the last byte. **/
+  private static void putVarint(ByteBuffer buffer, int value){
+    while((value & ~0x7F)!=0){
+      buffer.put((byte) (value & 0x7F | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  /** Reads a varint written by {@link #putVarint(ByteBuffer,int)}. **/
+  private static int getVarint(ByteBuffer buffer){
+    int value = 0;
+    for(int shift = 0; shift<32; shift+=7){
+      int b = buffer.get();
+      value |= (b & 0x7F)<<shift;
+      if(b>=0) return value;
+    }
+    throw new IllegalArgumentException("Invalid varint");
+  }
+}
@@ -3,4 +3,17 @@ package threeChess;
 /**
  * Enumeration the player colours
  **/
-public enum Colour{BLUE,GREEN,RED;}
+public enum Colour{BLUE,GREEN,RED;
+
+  /** Cached copy of the colours, as Colour.values() clones its array on every call **/
+  private static final Colour[] VALUES = values();
+
+  /**
+   * Gets the colour with the given ordinal, without copying the array of all colours.
+   * @param ordinal the ordinal of the colour, between 0 and 2.
+   * @return the colour with that ordinal.
+   * **/
+  static Colour get(int ordinal){
+    return VALUES[ordinal];
+  }
+}
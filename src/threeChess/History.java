@@ -0,0 +1,63 @@
+package threeChess;
+
+import java.io.Serializable;
+
+/**
+ * An immutable record of the moves played in a game.
+ * Each entry holds one move and links to the entry for the move before it,
+ * so boards cloned from one another share the moves they have in common.
+ * Adding a move, undoing the last move and cloning a board all take constant time.
+ * Boards flatten the entries into an array when moves are looked up by index, see {@link #toArray(History[])}.
+ * Each entry also records the key of the position the move led to,
+ * and how many moves in a row have been quiet, for detecting repeated positions.
+ * **/
+final class History implements Serializable {
+
+  /** Serial version UID for History serialization and storage**/
+  private static final long serialVersionUID = 4127046378916517743L;
+  /** The start position of the move **/
+  final Position start;
+  /** The end position of the move **/
+  final Position end;
+  /** The entry for the previous move, or null if this is the first move **/
+  final History previous;
+  /** The number of moves up to and including this one **/
+  final int size;
+  /** The key of the position after the move, see {@link Board#getKey()} **/
+  final long key;
+  /**
+   * The number of quiet moves (neither captures nor pawn moves) in a row, up to and including this one.
+   * Positions before the last capture or pawn move can never recur, so only this many earlier positions can repeat this one.
+   * **/
+  final int quiet;
+
+  /**
+   * Creates the entry for a move following the given entry.
+   * @param previous the entry for the previous move, or null if this is the first move.
+   * @param start the start position of the move.
+   * @param end the end position of the move.
+   * @param key the key of the position after the move.
+   * @param quiet true if the move was neither a capture nor a pawn move.
+   * **/
+  History(History previous, Position start, Position end, long key, boolean quiet){
+    this.previous = previous; this.start = start; this.end = end; this.key = key;
+    size = previous==null?1:previous.size+1;
+    this.quiet = !quiet?0:(previous==null?1:previous.quiet+1);
+  }
+
+  /**
+   * Lists the entries up to and including this one in order, so that moves can be looked up by index.
+   * @param earlier a list from an earlier call, whose entries are reused as far as they match this history, or null.
+   * @return a new array of the size entries ending with this one, indexed from 0.
+   * **/
+  History[] toArray(History[] earlier){
+    History[] entries = new History[size];
+    History entry = this;
+    while(entry!=null && !(earlier!=null && entry.size<=earlier.length && earlier[entry.size-1]==entry)){
+      entries[entry.size-1] = entry;
+      entry = entry.previous;
+    }
+    if(entry!=null) System.arraycopy(earlier,0,entries,0,entry.size);
+    return entries;
+  }
+}
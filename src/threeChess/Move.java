@@ -0,0 +1,90 @@
+package threeChess;
+
+/**
+ * Static methods for working with moves packed into a single int,
+ * as an allocation free alternative to the two element Position arrays used by the Agent API.
+ * Bits 0-6 hold the ordinal of the start position, bits 7-13 the ordinal of the end position,
+ * and the bits above hold flags describing the move.
+ * Two packed moves with the same start and end are the same move,
+ * as the flags are determined by the position the move is made in.
+ * **/
+public final class Move {
+
+  /** Flag set if the move takes a piece **/
+  public static final int CAPTURE = 1<<14;
+  /** Flag set if the move takes a pawn to the back rank, promoting it to a Queen **/
+  public static final int PROMOTION = 1<<15;
+  /** Flag set if the move is a King castling, which also moves a Rook **/
+  public static final int CASTLE = 1<<16;
+  /**
+   * An upper bound on the number of legal moves in a position,
+   * as a player has at most 16 pieces, each with at most 96 end positions.
+   * A buffer of this length is always large enough for {@link Board#generateLegalMoves(int[])}.
+   * **/
+  public static final int MAX_MOVES = 16*96;
+
+  /** Mask for a position ordinal **/
+  private static final int SQUARE = 0x7F;
+  /** Mask for the start and end positions, without flags **/
+  private static final int SQUARES = 0x3FFF;
+
+  private Move(){}
+
+  /**
+   * Packs a move with no flags.
+   * Use {@link Board#encodeMove(Position,Position)} to include the flags for a particular position.
+   * @param start the starting position of the move
+   * @param end the ending position of the move
+   * @return the packed move.
+   * **/
+  public static int encode(Position start, Position end){
+    return start.ordinal() | end.ordinal()<<7;
+  }
+
+  /**
+   * Packs a move in the Agent API format, with no flags.
+   * @param move a two element array containing the start position and the end position of the move
+   * @return the packed move.
+   * **/
+  public static int fromPositions(Position[] move){
+    return encode(move[0],move[1]);
+  }
+
+  /**
+   * Unpacks a move to the Agent API format.
+   * @param move the packed move
+   * @return a two element array containing the start position and the end position of the move.
+   * **/
+  public static Position[] toPositions(int move){
+    return new Position[]{getStart(move),getEnd(move)};
+  }
+
+  /** @return the start position of a packed move. **/
+  public static Position getStart(int move){return Position.get(move & SQUARE);}
+
+  /** @return the end position of a packed move. **/
+  public static Position getEnd(int move){return Position.get(move>>>7 & SQUARE);}
+
+  /** @return the ordinal of the start position of a packed move. **/
+  public static int getStartOrdinal(int move){return move & SQUARE;}
+
+  /** @return the ordinal of the end position of a packed move. **/
+  public static int getEndOrdinal(int move){return move>>>7 & SQUARE;}
+
+  /** @return true if the two packed moves have the same start and end positions, ignoring flags. **/
+  public static boolean sameSquares(int move, int other){return (move & SQUARES)==(other & SQUARES);}
+
+  /** @return true if the packed move takes a piece. **/
+  public static boolean isCapture(int move){return (move & CAPTURE)!=0;}
+
+  /** @return true if the packed move promotes a pawn. **/
+  public static boolean isPromotion(int move){return (move & PROMOTION)!=0;}
+
+  /** @return true if the packed move is castling. **/
+  public static boolean isCastle(int move){return (move & CASTLE)!=0;}
+
+  /** @return a String representation of the move, in the style "BD2-BD4". **/
+  public static String toString(int move){
+    return getStart(move)+"-"+getEnd(move);
+  }
+}
@@ -0,0 +1,55 @@
+package threeChess;
+
+/**
+ * An adjudicator that ends a game once it reaches a number of moves,
+ * or once one player's score (see {@link Board#score(Colour)}) is far enough ahead of both the others.
+ * Either way the player with the lowest score loses, 
+ * and as with a timeout the player with the highest score of the other two wins.
+ * **/
+public class MoveLimitAdjudicator implements Adjudicator{
+
+  /** The number of moves after which the game ends, or 0 for no limit **/
+  private final int moveLimit;
+  /** The lead in score over both other players that ends the game, or 0 for no limit **/
+  private final int lead;
+
+  /**
+   * Creates an adjudicator with the given limits.
+   * @param moveLimit the number of moves, counted from the start of the game, after which the game ends, or 0 for no limit.
+   * @param lead the amount by which a player's score must exceed both other scores to end the game, or 0 for no limit.
+   * **/
+  public MoveLimitAdjudicator(int moveLimit, int lead){
+    this.moveLimit = moveLimit;
+    this.lead = lead;
+  }
+
+  /** @return the number of moves after which the game ends, or 0 for no limit. **/
+  public int getMoveLimit(){return moveLimit;}
+
+  /** @return the lead in score that ends the game, or 0 for no limit. **/
+  public int getLead(){return lead;}
+
+  /**
+   * Ends the game if the move limit has been reached or a player has a decisive lead.
+   * @param board the board after the move.
+   * @return the player with the lowest score (the first in turn order from Blue if tied), or null if the game goes on.
+   * **/
+  public Colour adjudicate(Board board){
+    Colour lowest = null, highest = null;
+    int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, second = Integer.MIN_VALUE;
+    for(Colour c: Colour.values()){
+      int score = board.score(c);
+      if(score<min){lowest = c; min = score;}
+      if(score>max){second = max; highest = c; max = score;}
+      else if(score>second) second = score;
+    }
+    if(moveLimit>0 && board.getMoveCount()>=moveLimit) return lowest;
+    if(lead>0 && max-second>=lead) return lowest;
+    return null;
+  }
+
+  /** @return a description of the limits. **/
+  public String toString(){
+    return "Move limit: "+moveLimit+", lead: "+lead;
+  }
+}
@@ -0,0 +1,175 @@
+package threeChess;
+
+/**
+ * A compact text notation for positions, in the style of Forsyth-Edwards Notation, with a parser and writer that do not allocate.
+ * A position is written as four space separated fields:
+ * the pieces, as 12 ranks separated by '/', in the order Blue rows 1-4, Green rows 1-4, Red rows 1-4,
+ * each listing columns A to H, with a piece written as its colour letter followed by its type letter in lower case
+ * (for example "Bk" for the Blue King and "Rn" for a Red Knight) and a run of empty positions written as a digit from 1 to 8;
+ * the colour letter of the player to move;
+ * each player's remaining time in milliseconds, separated by ',', in the order Blue, Green, Red;
+ * and the pieces each player has taken, written as for the board, separated by '/', with '-' for none.
+ * For example the initial position of an untimed game is
+ * <pre>BrBnBbBqBkBbBnBr/BpBpBpBpBpBpBpBp/8/8/GrGnGbGqGkGbGnGr/GpGpGpGpGpGpGpGp/8/8/RrRnRbRqRkRbRnRr/RpRpRpRpRpRpRpRp/8/8 B 0,0,0 -/-/-</pre>
+ * Castling needs no extra state, as it only depends on where the King and Rook stand.
+ * The notation describes a position rather than a game, so the moves that led to it are not included,
+ * and the game is over if a King has been taken or a player has run out of time.
+ * **/
+public final class Notation {
+
+  /** The letters of the colours, by ordinal **/
+  private static final String COLOUR_LETTERS = "BGR";
+  /** The letters of the piece types, by ordinal **/
+  private static final String TYPE_LETTERS = "pnbrqk";
+
+  private Notation(){}
+
+  /**
+   * Writes the notation of a board's position.
+   * @param board the board to write.
+   * @param out the builder to append the notation to.
+   * @return the builder.
+   * **/
+  public static StringBuilder write(Board board, StringBuilder out){
+    for(int rank = 0; rank<12; rank++){
+      if(rank>0) out.append('/');
+      int empty = 0;
+      for(int column = 0; column<8; column++){
+        Piece piece = board.getPiece(Position.get(32*(rank/4)+rank%4+4*column));
+        if(piece==null){
+          empty++;
+          continue;
+        }
+        if(empty>0) out.append((char) ('0'+empty));
+        empty = 0;
+        append(piece,out);
+      }
+      if(empty>0) out.append((char) ('0'+empty));
+    }
+    out.append(' ').append(COLOUR_LETTERS.charAt(board.getTurn().ordinal())).append(' ');
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      if(player>0) out.append(',');
+      out.append(board.getTimeLeft(c));
+    }
+    out.append(' ');
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      if(player>0) out.append('/');
+      int taken = board.getCapturedCount(c);
+      if(taken==0) out.append('-');
+      for(int i = 0; i<taken; i++) append(board.getCaptured(c,i),out);
+    }
+    return out;
+  }
+
+  /**
+   * Gets the notation of a board's position.
+   * @param board the board to describe.
+   * @return the notation of the position.
+   * **/
+  public static String toString(Board board){
+    return write(board,new StringBuilder(128)).toString();
+  }
+
+  /** Appends the two letters of a piece. **/
+  private static void append(Piece piece, StringBuilder out){
+    out.append(COLOUR_LETTERS.charAt(piece.getColour().ordinal())).append(TYPE_LETTERS.charAt(piece.getType().ordinal()));
+  }
+
+  /**
+   * Reads a position into a new board.
+   * @param text the notation of the position.
+   * @return a board in that position, with no moves played.
+   * @throws IllegalArgumentException if the text is not a valid position.
+   * **/
+  public static Board read(CharSequence text){
+    Board board = new Board();
+    read(text,board);
+    return board;
+  }
+
+  /**
+   * Reads a position into an existing board, replacing its state entirely, including its history of moves.
+   * Reading into the same board repeatedly allocates nothing, which suits loading many positions.
+   * @param text the notation of the position.
+   * @param board the board to set up.
+   * @throws IllegalArgumentException if the text is not a valid position.
+   * **/
+  public static void read(CharSequence text, Board board){
+    board.clear();
+    int i = 0, length = text.length();
+    for(int rank = 0; rank<12; rank++){
+      if(rank>0) i = expect(text,i,'/');
+      int column = 0;
+      while(column<8){
+        if(i>=length) throw error("Rank "+(rank+1)+" is too short",i);
+        char ch = text.charAt(i);
+        if('1'<=ch && ch<='8'){
+          column += ch-'0';
+          i++;
+        }
+        else{
+          board.place(Position.get(32*(rank/4)+rank%4+4*column),piece(text,i));
+          column++;
+          i += 2;
+        }
+      }
+      if(column>8) throw error("Rank "+(rank+1)+" is too long",i);
+    }
+    i = expect(text,i,' ');
+    if(i>=length) throw error("Missing player to move",i);
+    int turn = COLOUR_LETTERS.indexOf(text.charAt(i++));
+    if(turn<0) throw error("Invalid player to move",i-1);
+    i = expect(text,i,' ');
+    boolean gameOver = false;
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      if(player>0) i = expect(text,i,',');
+      int start = i;
+      boolean negative = i<length && text.charAt(i)=='-';
+      if(negative) i++;
+      long time = 0;
+      while(i<length && '0'<=text.charAt(i) && text.charAt(i)<='9' && time<=Integer.MAX_VALUE) time = 10*time+text.charAt(i++)-'0';
+      if(i==start+(negative?1:0) || time>Integer.MAX_VALUE) throw error("Invalid time",start);
+      board.setTimeLeft(c,(int) (negative?-time:time));
+      gameOver |= negative && time>0;
+    }
+    i = expect(text,i,' ');
+    for(int player = 0; player<3; player++){
+      Colour c = Colour.get(player);
+      if(player>0) i = expect(text,i,'/');
+      if(i<length && text.charAt(i)=='-'){
+        i++;
+        continue;
+      }
+      while(i<length && text.charAt(i)!='/' && text.charAt(i)!=' '){
+        Piece piece = piece(text,i);
+        board.addCaptured(c,piece);
+        gameOver |= piece.getType()==PieceType.KING;
+        i += 2;
+      }
+    }
+    if(i!=length) throw error("Unexpected text",i);
+    board.setState(Colour.get(turn),gameOver,null);
+  }
+
+  /** @return the piece whose two letters start at index i. **/
+  private static Piece piece(CharSequence text, int i){
+    int colour = i<text.length()?COLOUR_LETTERS.indexOf(text.charAt(i)):-1;
+    int type = i+1<text.length()?TYPE_LETTERS.indexOf(text.charAt(i+1)):-1;
+    if(colour<0 || type<0) throw error("Invalid piece",i);
+    return Piece.fromCode(1+6*colour+type);
+  }
+
+  /** @return the index after the expected character at index i. **/
+  private static int expect(CharSequence text, int i, char expected){
+    if(i>=text.length() || text.charAt(i)!=expected) throw error("Expected '"+expected+"'",i);
+    return i+1;
+  }
+
+  /** @return an exception describing an error at an index of the text. **/
+  private static IllegalArgumentException error(String message, int index){
+    return new IllegalArgumentException(message+" at index "+index);
+  }
+}
@@ -0,0 +1,154 @@
+package threeChess;
+
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the positions reachable from a board in a given number of moves (perft),
+ * as a check on the move generator and a measure of its speed.
+ * The moves counted are those generated by {@link Board#generateLegalMoves(int[])},
+ * and a position where the game is over has no moves.
+ * Counts can be split by the first move played (divide), which narrows down where two generators disagree,
+ * and large counts can be spread over several cores with a ForkJoinPool.
+ * **/
+public final class Perft {
+
+  /** Subtrees with this many moves or fewer left are counted by a single task, as forking them costs more than it saves **/
+  private static final int SPLIT_DEPTH = 3;
+
+  private Perft(){}
+
+  /**
+   * Counts the positions reachable in exactly depth moves, walking the board with make and unmake.
+   * @param board the board to count from, which is left as it was.
+   * @param depth the number of moves to play.
+   * @return the number of leaf positions.
+   * **/
+  public static long perft(Board board, int depth){
+    return count(board,depth,new int[depth][Move.MAX_MOVES]);
+  }
+
+  /**
+   * Counts the positions reachable in exactly depth moves, as {@link #perft(Board,int)},
+   * splitting the subtrees between the threads of a pool.
+   * @param board the board to count from, which is left as it was.
+   * @param depth the number of moves to play.
+   * @param pool the pool to run the count on.
+   * @return the number of leaf positions.
+   * **/
+  public static long perft(Board board, int depth, ForkJoinPool pool){
+    return pool.invoke(new Subtree(copy(board),depth));
+  }
+
+  /**
+   * Counts the positions reachable in exactly depth moves after each legal move,
+   * printing a line for each move and the total.
+   * @param board the board to count from, which is left as it was.
+   * @param depth the number of moves to play, including the first.
+   * @param pool the pool to run the count on, or null to count on the calling thread.
+   * @param out the stream to print the counts to.
+   * @return the total number of leaf positions.
+   * **/
+  public static long divide(Board board, int depth, ForkJoinPool pool, PrintStream out){
+    if(depth<1 || board.gameOver()) return depth==0?1:0;
+    int[] moves = new int[Move.MAX_MOVES];
+    int count = board.generateLegalMoves(moves);
+    long total = 0;
+    for(int i = 0; i<count; i++){
+      long undo = make(board,moves[i]);
+      long nodes = pool==null?perft(board,depth-1):perft(board,depth-1,pool);
+      board.unmakeMove(undo);
+      out.println(Move.toString(moves[i])+": "+nodes);
+      total += nodes;
+    }
+    out.println("Moves: "+count+", Nodes: "+total);
+    return total;
+  }
+
+  /** Counts the leaves of a subtree, using a separate move buffer for each depth. **/
+  private static long count(Board board, int depth, int[][] buffers){
+    if(depth==0) return 1;
+    if(board.gameOver()) return 0;
+    int[] moves = buffers[depth-1];
+    int count = board.generateLegalMoves(moves);
+    if(depth==1) return count;
+    long nodes = 0;
+    for(int i = 0; i<count; i++){
+      long undo = make(board,moves[i]);
+      nodes += count(board,depth-1,buffers);
+      board.unmakeMove(undo);
+    }
+    return nodes;
+  }
+
+  /** Plays a generated move, which is always legal. **/
+  private static long make(Board board, int move){
+    try{
+      return board.makeMove(move);
+    }catch(ImpossiblePositionException e){throw new IllegalStateException("Generated an illegal move "+Move.toString(move),e);}
+  }
+
+  /** @return a copy of the board for a task to walk. **/
+  private static Board copy(Board board){
+    try{
+      return (Board) board.clone();
+    }catch(CloneNotSupportedException e){throw new AssertionError(e);}
+  }
+
+  /** A task counting the leaves below a board, forking a task for each move until few moves are left. **/
+  private static class Subtree extends RecursiveTask<Long>{
+
+    private static final long serialVersionUID = 1L;
+    private final Board board;
+    private final int depth;
+
+    /** @param board a board the task owns. **/
+    Subtree(Board board, int depth){
+      this.board = board;
+      this.depth = depth;
+    }
+
+    protected Long compute(){
+      if(depth<=SPLIT_DEPTH) return perft(board,depth);
+      if(board.gameOver()) return 0L;
+      int[] moves = new int[Move.MAX_MOVES];
+      int count = board.generateLegalMoves(moves);
+      Subtree[] tasks = new Subtree[count];
+      for(int i = 0; i<count; i++){
+        long undo = make(board,moves[i]);
+        tasks[i] = new Subtree(copy(board),depth-1);
+        board.unmakeMove(undo);
+        tasks[i].fork();
+      }
+      long nodes = 0;
+      for(int i = count-1; i>=0; i--) nodes += tasks[i].join();
+      return nodes;
+    }
+  }
+
+  /**
+   * Runs perft from the initial position and reports the count and speed.
+   * Usage: java threeChess.Perft depth [threads] [divide]
+   * where threads is the number of threads to use (1 by default, 0 for one per core),
+   * and divide prints the count after each first move.
+   * **/
+  public static void main(String[] args){
+    if(args.length<1){
+      System.out.println("Usage: java threeChess.Perft depth [threads] [divide]");
+      return;
+    }
+    int depth = Integer.parseInt(args[0]);
+    int threads = args.length>1?Integer.parseInt(args[1]):1;
+    boolean divide = args.length>2 && args[2].equals("divide");
+    ForkJoinPool pool = threads==1?null:(threads==0?new ForkJoinPool():new ForkJoinPool(threads));
+    Board board = new Board(0);
+    long time = System.nanoTime();
+    long nodes;
+    if(divide) nodes = divide(board,depth,pool,System.out);
+    else nodes = pool==null?perft(board,depth):perft(board,depth,pool);
+    time = System.nanoTime()-time;
+    if(pool!=null) pool.shutdown();
+    System.out.println("Depth "+depth+": "+nodes+" nodes in "+time/1000000+"ms, "+(long) (nodes*1e9/Math.max(time,1))+" nodes/s");
+  }
+}
@@ -12,6 +12,12 @@ public class Piece implements Serializable {
   private static final long serialVersionUID = 8757415399259946465L; // Serial version UID for serialization and storage
   private final PieceType type;// the piece's type
   private final Colour colour;//the pieces colour
+  private static final Piece[] PIECES = new Piece[18];// shared instances, indexed by code-1
+
+  static{
+    for(Colour c: Colour.values())
+      for(PieceType t: PieceType.values()) PIECES[c.ordinal()*6+t.ordinal()] = new Piece(t,c);
+  }
 
   /**
    * Constructs a piece of the given type and colour.
@@ -22,6 +28,29 @@ public class Piece implements Serializable {
     this.type = type; this.colour = colour;
   }
 
+  /**
+   * Returns a shared instance of the piece of the given type and colour.
+   * As pieces are immutable, this avoids allocating a new piece where identity does not matter.
+   * @param type the type of the piece
+   * @param colour the colour of the piece
+   * @return a piece of the given type and colour.
+   * **/
+  public static Piece get(PieceType type, Colour colour){
+    return PIECES[colour.ordinal()*6+type.ordinal()];
+  }
+
+  /**
+   * Gets the shared piece with the given compact code, as used by the board representation.
+   * @param code a code between 1 and 18 inclusive, or 0 for no piece.
+   * @return the piece with that code, or null if the code is 0.
+   * **/
+  static Piece fromCode(int code){
+    return code==0?null:PIECES[code-1];
+  }
+
+  /**@return a compact code between 1 and 18 uniquely identifying the piece's type and colour**/
+  int code(){return 1+colour.ordinal()*6+type.ordinal();}
+
   /**@return the type of the piece**/
   public PieceType getType(){return type;}
 
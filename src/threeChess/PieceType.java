@@ -15,6 +15,8 @@ public enum PieceType{
 
   /**the utility associated with taking this piece**/
   private final int value;
+  /**the steps of each piece type, shared so that move generation does not rebuild them**/
+  private static final Direction[][][] STEPS = new Direction[6][][];
   //return arrays of moves for pieceTypes
   private static Direction[][] pawnSteps(){
     return new Direction[][] {{Direction.FORWARD},{Direction.FORWARD,Direction.FORWARD},
@@ -51,6 +53,10 @@ public enum PieceType{
     {Direction.FORWARD},{Direction.BACKWARD},{Direction.LEFT},{Direction.RIGHT}}; //kings and queens
   }
 
+  static{
+    for(PieceType type: values()) STEPS[type.ordinal()] = type.getSteps();
+  }
+
   /**Sets the value of the piece**/
   private PieceType(int value){
     this.value = value;
@@ -77,6 +83,15 @@ public enum PieceType{
     }
   }
 
+  /**
+   * Returns the shared array of steps for this piece type, as {@link #getSteps()} but without copying.
+   * The array must not be modified.
+   * @return an array or arrays of directions where each inner array is a legitimate step.
+   * **/
+  Direction[][] steps(){
+    return STEPS[ordinal()];
+  }
+
   /**
    * Returns the number of repetitions of a step are allowed.
    * Rooks, Bishops and Queens may iterate one step type in a move.
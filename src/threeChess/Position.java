@@ -57,6 +57,24 @@ public enum Position{
   /**@return the position's column**/
   public int getColumn(){return column;}
 
+  /** Cached copy of the positions, as Position.values() clones its array on every call **/
+  private static final Position[] VALUES = values();
+  /** 
+   * The neighbour of every position in every direction, and in the reverse of that direction,
+   * indexed by 8*ordinal+2*direction+(reverse?1:0), with null marking a step off the board.
+   * **/
+  private static final Position[] NEIGHBOURS = new Position[8*VALUES.length];
+
+  static{
+    Direction[] directions = Direction.values();
+    for(Position p: VALUES){
+      for(Direction d: directions){
+        NEIGHBOURS[8*p.ordinal()+2*d.ordinal()] = p.computeNeighbour(d);
+        NEIGHBOURS[8*p.ordinal()+2*d.ordinal()+1] = p.computeNeighbour(directions[d.ordinal()^1]);//FORWARD-BACKWARD, LEFT-RIGHT
+      }
+    }
+  }
+
   /**
    * Gets the position corresponding to the specified colour, row and column.
    * @return the position of the specified colour, row and column
@@ -64,16 +82,19 @@ public enum Position{
    * **/
   public static Position get(Colour colour, int row, int column) throws ImpossiblePositionException{
     int index= row+4*column;
-    if(index>=0 && index<32){
-      switch(colour){
-        case BLUE: return Position.values()[index];
-        case GREEN: return Position.values()[index+32];
-        case RED: return Position.values()[index+64];           
-      }
-    }
+    if(index>=0 && index<32) return VALUES[32*colour.ordinal()+index];
     throw new ImpossiblePositionException("No such position."); 
   }
 
+  /**
+   * Gets the position with the given ordinal, without copying the array of all positions.
+   * @param ordinal the ordinal of the position, between 0 and 95.
+   * @return the position with that ordinal.
+   * **/
+  public static Position get(int ordinal){
+    return VALUES[ordinal];
+  }
+
   /**
    * Gets the neighbouring cell in the given direction. 
    * Cells always move forward towards the center line,
@@ -83,22 +104,39 @@ public enum Position{
    * or moving of the side of the board.
    * */
   public Position neighbour(Direction direction) throws ImpossiblePositionException{
+    Position next = NEIGHBOURS[8*ordinal()+2*direction.ordinal()];
+    if(next==null) throw new ImpossiblePositionException("Moved off board");
+    return next;
+  }
+
+  /**
+   * Gets the neighbouring cell in the given direction, or its reverse, from a precomputed table.
+   * Unlike {@link #neighbour(Direction)} this does not throw an exception,
+   * so it is suited to move generation where stepping off the board is routine.
+   * @param direction the direction to move in.
+   * @param reverse whether to move in the opposite direction instead.
+   * @return the position in the specified direction, or null if that is off the board.
+   * **/
+  public Position tryNeighbour(Direction direction, boolean reverse){
+    return NEIGHBOURS[8*ordinal()+2*direction.ordinal()+(reverse?1:0)];
+  }
+
+  /** Computes the neighbouring cell in the given direction, or null if it is off the board. **/
+  private Position computeNeighbour(Direction direction){
+    int index = ordinal();
     switch(direction){
       case FORWARD:
-        if(row<3) return get(colour, row+1, column);
-        if(column<4) return get(Colour.values()[(colour.ordinal()+1)%3], 3, 7-column);
-        return get(Colour.values()[(colour.ordinal()+2)%3],3,7-column);
+        if(row<3) return VALUES[index+1];
+        if(column<4) return VALUES[32*((colour.ordinal()+1)%3)+3+4*(7-column)];
+        return VALUES[32*((colour.ordinal()+2)%3)+3+4*(7-column)];
       case BACKWARD:
-        if(row==0) throw new ImpossiblePositionException("Moved off board");
-        return get(colour,row-1,column);
+        return row==0?null:VALUES[index-1];
       case LEFT:
-        if(column==0) throw new ImpossiblePositionException("Moved off board");
-        return get(colour,row,column-1);
-      case RIGHT:  
-        if(column==7) throw new ImpossiblePositionException("Moved off board");
-        return get(colour,row,column+1);
-    }  
-    throw new ImpossiblePositionException("Unreachable code?");
+        return column==0?null:VALUES[index-4];
+      case RIGHT:
+        return column==7?null:VALUES[index+4];
+    }
+    return null;
   }
 
   /**
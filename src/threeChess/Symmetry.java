@@ -0,0 +1,101 @@
+package threeChess;
+
+/**
+ * Static methods for the threefold rotational symmetry of the board.
+ * Rotating by one section relabels Blue as Green, Green as Red and Red as Blue,
+ * for both the sections of the board and the colours of the pieces, so BA1 becomes GA1 and a Blue King becomes a Green King.
+ * The rules treat every section alike, so a rotated position plays exactly as the original,
+ * with every move rotated in the same way.
+ * The canonical form of a position is its rotation with Blue to move,
+ * which lets caches, opening books and search tables share their entries between the three players.
+ * **/
+public final class Symmetry {
+
+  private Symmetry(){}
+
+  /** @return the colour a rotation by the given number of sections (0, 1 or 2) turns a colour into. **/
+  public static Colour rotate(Colour colour, int rotation){
+    return Colour.get((colour.ordinal()+rotation)%3);
+  }
+
+  /** @return the position a rotation by the given number of sections (0, 1 or 2) moves a position to. **/
+  public static Position rotate(Position position, int rotation){
+    return Position.get((position.ordinal()+32*rotation)%Board.SIZE);
+  }
+
+  /** @return the piece a rotation by the given number of sections (0, 1 or 2) turns a piece into. **/
+  public static Piece rotate(Piece piece, int rotation){
+    return piece==null?null:Piece.get(piece.getType(),rotate(piece.getColour(),rotation));
+  }
+
+  /**
+   * Rotates a move in the Agent API format.
+   * @param move a two element array of the start position and the end position.
+   * @param rotation the number of sections to rotate by, 0, 1 or 2.
+   * @return a new array holding the rotated move.
+   * **/
+  public static Position[] rotate(Position[] move, int rotation){
+    return new Position[]{rotate(move[0],rotation),rotate(move[1],rotation)};
+  }
+
+  /**
+   * Rotates a packed move (see {@link Move}), keeping its flags.
+   * @param move the packed move.
+   * @param rotation the number of sections to rotate by, 0, 1 or 2.
+   * @return the rotated packed move.
+   * **/
+  public static int rotateMove(int move, int rotation){
+    int start = (Move.getStartOrdinal(move)+32*rotation)%Board.SIZE, end = (Move.getEndOrdinal(move)+32*rotation)%Board.SIZE;
+    return move & ~0x3FFF | start | end<<7;
+  }
+
+  /** @return the rotation (0, 1 or 2) that takes the given player to move to Blue. **/
+  public static int canonicalRotation(Colour turn){
+    return (3-turn.ordinal())%3;
+  }
+
+  /** @return the rotation (0, 1 or 2) that undoes the given rotation. **/
+  public static int inverse(int rotation){
+    return (3-rotation)%3;
+  }
+
+  /**
+   * Builds a rotated copy of a board, with its pieces, player to move, clocks, captures and moves all rotated.
+   * The rotated board does not keep any draw rule or adjudicator of the original,
+   * and positions from before the rotation are not counted as repetitions.
+   * @param board the board to rotate.
+   * @param rotation the number of sections to rotate by, 0, 1 or 2.
+   * @return a new board holding the rotated game.
+   * **/
+  public static Board rotate(Board board, int rotation){
+    Board rotated = new Board();
+    rotated.clear();
+    for(int i = 0; i<Board.SIZE; i++){
+      Position position = Position.get(i);
+      rotated.place(rotate(position,rotation),rotate(board.getPiece(position),rotation));
+    }
+    for(Colour c: Colour.values()){
+      Colour to = rotate(c,rotation);
+      rotated.setTimeLeft(to,board.getTimeLeft(c));
+      for(int i = 0; i<board.getCapturedCount(c); i++) rotated.addCaptured(to,rotate(board.getCaptured(c,i),rotation));
+    }
+    History[] moves = new History[board.getMoveCount()];
+    History entry = board.getHistory();
+    for(int i = moves.length-1; i>=0; i--, entry = entry.previous) moves[i] = entry;
+    for(History move: moves) rotated.addHistory(rotate(move.start,rotation),rotate(move.end,rotation));
+    Colour adjudicated = board.getAdjudicated();
+    rotated.setState(rotate(board.getTurn(),rotation),board.gameOver(),adjudicated==null?null:rotate(adjudicated,rotation));
+    return rotated;
+  }
+
+  /**
+   * Builds the canonical form of a board, its rotation with Blue to move.
+   * Use {@link #canonicalRotation(Colour)} of the original player to move to rotate moves into the canonical form,
+   * and its {@link #inverse(int)} to rotate moves found there back.
+   * @param board the board to rotate.
+   * @return a new board holding the rotated game, or a rotated copy by 0 if Blue is already to move.
+   * **/
+  public static Board canonical(Board board){
+    return rotate(board,canonicalRotation(board.getTurn()));
+  }
+}
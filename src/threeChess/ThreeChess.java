@@ -129,8 +129,63 @@ public class ThreeChess{
    * @return an array of three ints, the scores for blue, green and red, in that order.
    * **/
   public static int[] play(Agent blue, Agent green, Agent red, int timeLimit, PrintStream logger, boolean displayOn){
+    return play(blue, green, red, timeLimit, logger, displayOn, 0, 0, null);
+  }
+
+  /**
+   * Runs a threeChess game between three players, as {@link #play(Agent,Agent,Agent,int,PrintStream,boolean)},
+   * with a rule for ending the game early.
+   * For example a {@link MoveLimitAdjudicator} of 600 moves or a 25 point lead keeps untimed games to 200 moves each.
+   * @param blue the agent playing the blue pieces.
+   * @param green the agent playing the green pieces.
+   * @param red the Agent playing the red pieces.
+   * @param timeLimit the cumulative time each player has (in seconds). To specify an untimed game, set as less than or equal to zero.
+   * @param logger a printStream to write the game moves to.
+   * @param displayOn a boolean flag for whether the game should be graphically displayed
+   * @param adjudicator the rule for ending the game early, or null for none.
+   * @return an array of three ints, the scores for blue, green and red, in that order.
+   * **/
+  public static int[] play(Agent blue, Agent green, Agent red, int timeLimit, PrintStream logger, boolean displayOn, Adjudicator adjudicator){
+    return play(blue, green, red, timeLimit, logger, displayOn, 0, 0, adjudicator);
+  }
+
+  /**
+   * Runs a threeChess game between three players, as {@link #play(Agent,Agent,Agent,int,PrintStream,boolean)},
+   * drawing the game by repetition or after a run of quiet moves, see {@link Board#setDrawRule(int,int)}.
+   * For example limits of 3 and 150 draw by threefold repetition, or after 50 moves each without a capture or pawn move.
+   * @param blue the agent playing the blue pieces.
+   * @param green the agent playing the green pieces.
+   * @param red the Agent playing the red pieces.
+   * @param timeLimit the cumulative time each player has (in seconds). To specify an untimed game, set as less than or equal to zero.
+   * @param logger a printStream to write the game moves to.
+   * @param displayOn a boolean flag for whether the game should be graphically displayed
+   * @param repetitions the number of occurrences of a position that draws the game, or 0 for no limit.
+   * @param quietMoves the number of quiet moves in a row that draws the game, or 0 for no limit.
+   * @return an array of three ints, the scores for blue, green and red, in that order.
+   * **/
+  public static int[] play(Agent blue, Agent green, Agent red, int timeLimit, PrintStream logger, boolean displayOn, int repetitions, int quietMoves){
+    return play(blue, green, red, timeLimit, logger, displayOn, repetitions, quietMoves, null);
+  }
+
+  /**
+   * Runs a threeChess game between three players, as {@link #play(Agent,Agent,Agent,int,PrintStream,boolean)},
+   * with both a draw rule and a rule for ending the game early.
+   * @param blue the agent playing the blue pieces.
+   * @param green the agent playing the green pieces.
+   * @param red the Agent playing the red pieces.
+   * @param timeLimit the cumulative time each player has (in seconds). To specify an untimed game, set as less than or equal to zero.
+   * @param logger a printStream to write the game moves to.
+   * @param displayOn a boolean flag for whether the game should be graphically displayed
+   * @param repetitions the number of occurrences of a position that draws the game, or 0 for no limit.
+   * @param quietMoves the number of quiet moves in a row that draws the game, or 0 for no limit.
+   * @param adjudicator the rule for ending the game early, or null for none.
+   * @return an array of three ints, the scores for blue, green and red, in that order.
+   * **/
+  public static int[] play(Agent blue, Agent green, Agent red, int timeLimit, PrintStream logger, boolean displayOn, int repetitions, int quietMoves, Adjudicator adjudicator){
     Board board = new Board(timeLimit>0?timeLimit*1000:1);
     boolean timed = timeLimit>0;
+    board.setDrawRule(repetitions,quietMoves);
+    board.setAdjudicator(adjudicator);
     logger.println("======NEW GAME======");
     logger.println("BLUE: "+blue.toString());
     logger.println("GREEN: "+green.toString());
@@ -140,14 +195,14 @@ public class ThreeChess{
       display = new ThreeChessDisplay(board, blue.toString(), green.toString(), red.toString());
       GUIAgent.currentDisplay = display;
     }
-    while(!board.gameOver()){//note in an untimed game, this loop can run infinitely.
+    Agent[] agents = {blue, green, red};
+    for(Colour c: Colour.values()) agents[c.ordinal()].onGameStart(c,board.snapshot());
+    while(!board.gameOver()){//note in an untimed game with no draw rule or adjudicator, this loop can run infinitely.
       Colour colour = board.getTurn();
       Agent current = (colour==Colour.BLUE?blue:(colour==Colour.GREEN?green:red));
+      board.getLegalMoves();//find the moves once, for the agent's snapshot of the board and for checking the move they choose
       long startTime = System.nanoTime();
-      Position[] move = null;
-      try{
-        move = current.playMove((Board) board.clone());
-      }catch(CloneNotSupportedException e){}
+      Position[] move = current.playMove(board.snapshot());
       //How to deal with infinite loops here?
       //make agents runnable abstract classes and provide a final method for running a move?
       //set board as a variable
@@ -156,8 +211,10 @@ public class ThreeChess{
       long time = (System.nanoTime() - startTime + 500_000L) / 1_000_000L; // Rounds to nearest millisecond
       if(move!=null && move.length==2 && board.isLegalMove(move[0],move[1])){
         try{
+          int moveCount = board.getMoveCount();
           board.move(move[0],move[1],(timed?(int)time:0));
           logger.println(colour + ": " + move[0] + '-' + move[1] + " t:" + time);
+          if(board.getMoveCount()>moveCount) announceMove(agents,move[0],move[1],colour);//not if the player ran out of time
           if(displayOn){
             // There's no point in sleeping if we have to wait for the user to input their move anyway.
             if (current.isAutonomous()) {
@@ -172,17 +229,40 @@ public class ThreeChess{
       else{//Illegal move results in immediate loss, -2 penalty, and a win awarded to the other two players.
         int[] ret = {1,1,1};
         ret[board.getTurn().ordinal()] = -2;
-        return ret;
+        return announceEnd(agents,board,ret);
       }
     }
     GUIAgent.currentDisplay = null;
     logger.println("=====Game Over=====");
+    if(board.getAdjudicated()!=null) logger.println("Adjudicated: "+adjudicator);
     int[] ret = {0,0,0};
-    ret[board.getWinner().ordinal()] = 1;
-    ret[board.getLoser().ordinal()] = -1;
+    if(board.getWinner()!=null) ret[board.getWinner().ordinal()] = 1;
+    if(board.getLoser()!=null) ret[board.getLoser().ordinal()] = -1;
+    else logger.println("Draw");
     for(Colour c:Colour.values())
       logger.println(c+" score:"+ret[c.ordinal()]+" time:"+board.getTimeLeft(c)+" points:"+ ret[c.ordinal()]);
-    return ret;
+    return announceEnd(agents,board,ret);
+  }
+
+  /** Tells the agents of a game about a move, telling an agent that plays more than one colour only once. **/
+  private static void announceMove(Agent[] agents, Position start, Position end, Colour colour){
+    for(int i = 0; i<agents.length; i++) if(firstSeat(agents,i)) agents[i].onMove(start,end,colour);
+  }
+
+  /**
+   * Tells the agents of a game that it is over, telling an agent that plays more than one colour only once.
+   * @return the scores.
+   * **/
+  private static int[] announceEnd(Agent[] agents, Board board, int[] scores){
+    Board end = board.snapshot();
+    for(int i = 0; i<agents.length; i++) if(firstSeat(agents,i)) agents[i].onGameEnd(end,scores.clone());
+    return scores;
+  }
+
+  /** @return true if the agent at index i of a game's agents is not also at an earlier index. **/
+  private static boolean firstSeat(Agent[] agents, int i){
+    for(int j = 0; j<i; j++) if(agents[j]==agents[i]) return false;
+    return true;
   }
 
   /**
@@ -216,10 +296,7 @@ public class ThreeChess{
     Agent agent = new ManualAgent();
     ThreeChessDisplay display = new ThreeChessDisplay(board, "Blue", "Green", "Red");
     while(!board.gameOver()){//note in an untimed game, this loop can run infinitely.
-      Position[] move = null;
-      try{
-        move = agent.playMove((Board) board.clone());
-      }catch(CloneNotSupportedException e){}
+      Position[] move = agent.playMove(board.snapshot());
       if(move!=null && move.length==2){
         try{
           board.move(move[0],move[1],0);
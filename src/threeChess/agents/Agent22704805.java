@@ -2,17 +2,98 @@ package threeChess.agents;
 
 import threeChess.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 
 public class Agent22704805 extends Agent {
 
     // UCT exploration constant
     static final double TEMPERATURE = Math.sqrt(2);
+    // enough room for the legal end positions of any one piece
+    static final int MAX_TARGETS = 96;
+    // rollouts are drawn on a threefold repetition or 150 moves without a capture or pawn move, so they always finish
+    static final int ROLLOUT_REPETITIONS = 3;
+    static final int ROLLOUT_QUIET_MOVES = 150;
+    // rollouts are adjudicated on score after this many moves past the root, or once a player leads by this much
+    static final int ROLLOUT_MOVES = 120;
+    static final int ROLLOUT_LEAD = 12;
+    // default limit on the number of nodes kept in the tree, each of which takes around 50 bytes plus its share of the child arrays
+    static final int DEFAULT_MAX_NODES = 1000000;
+    // when the tree outgrows its limit, the least visited branches are pruned until it is back to this fraction of the limit
+    static final double PRUNE_TO = 0.75;
+    // lock free updates of the node statistics, for threads searching a shared tree
+    private static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "num_visits");
+    private static final AtomicIntegerFieldUpdater<Node> WINS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "num_wins");
     // maximum time spent per move
     private long MAX_TIME;
     private Node root;
+    // the number of moves played to reach root, kept in step with the game by onMove
+    private int root_moves = -1;
+    // the number of moves announced by onMove since the game started
+    private int moves_seen;
+    // the number of nodes in the tree below and including root, and the most it may grow to
+    private volatile int node_count;
+    private final int max_nodes;
+    // the single board walked up and down the tree by the search, positioned at root between iterations
+    private Board search_board;
+    // undo records for the moves applied to search_board since it was last at root
+    private long[] undo_stack = new long[256];
+    private int undo_count;
+    // reusable buffer for generating packed moves, see threeChess.Move
+    private final int[] move_buffer = new int[Move.MAX_MOVES];
+    // random numbers for rollouts, one generator per search so parallel searches neither share nor contend for one
+    private final Random random_generator = new Random();
+    // for parallel search, agents that each search on a thread of pool alongside this one,
+    // either with their own trees (root parallel) or with their own boards in this agent's tree (shared tree)
+    private final Agent22704805[] helpers;
+    private ExecutorService pool;
+    // true if the helpers search this agent's tree, counting visits on the way down as a virtual loss to spread them apart
+    private final boolean shared_tree;
 
-    public Agent22704805() {}
+    public Agent22704805()
+    {
+        this(DEFAULT_MAX_NODES, 1);
+    }
+
+    /**
+     * @param max_nodes the most nodes the search tree may hold, beyond which the least visited branches are pruned
+     */
+    public Agent22704805(int max_nodes)
+    {
+        this(max_nodes, 1);
+    }
+
+    /**
+     * Creates an agent that runs independent searches from the root in parallel, each with its own tree and random numbers,
+     * and chooses its move from their combined statistics
+     * @param max_nodes the most nodes the search trees may hold between them, shared equally between the searches
+     * @param threads the number of searches, each on its own thread, with 1 for a single search on the calling thread
+     */
+    public Agent22704805(int max_nodes, int threads)
+    {
+        this(max_nodes, threads, false);
+    }
+
+    /**
+     * Creates an agent that searches in parallel, either root parallel as {@link #Agent22704805(int, int)},
+     * or with every thread searching one shared tree, which gives a deeper search in the same memory.
+     * In a shared tree each thread counts a visit to the nodes it passes on the way down, before its rollout finishes,
+     * so the nodes look less promising to the other threads until the result is in (a virtual loss),
+     * and the statistics are updated without locks
+     * @param max_nodes the most nodes the search trees may hold between them
+     * @param threads the number of searches, each on its own thread, with 1 for a single search on the calling thread
+     * @param shared_tree true for the threads to search one shared tree, false for each to search its own
+     */
+    public Agent22704805(int max_nodes, int threads, boolean shared_tree)
+    {
+        if (threads < 1) throw new IllegalArgumentException("At least one search thread is needed");
+        if (max_nodes < threads) throw new IllegalArgumentException("Each tree must be allowed at least one node");
+        this.shared_tree = shared_tree;
+        this.max_nodes = shared_tree ? max_nodes : max_nodes / threads;
+        helpers = new Agent22704805[threads - 1];
+        for (int i = 0; i < helpers.length; i++) helpers[i] = new Agent22704805(this.max_nodes, 1, shared_tree);
+    }
 
     /**
      * Play a move in the game. 
@@ -25,52 +106,324 @@ public class Agent22704805 extends Agent {
      * current position of the piece to be moved, and the second element is the 
      * position to move that piece to.
      * **/
-    public Position[] playMove(Board board) {
-        int move_count = board.getMoveCount();
+    public Position[] playMove(final Board board) {
+        MAX_TIME = board.getTimeLeft(board.getTurn())/25; // anytime algorithm, limit set to 1/25th of time left
+        final long deadline = System.currentTimeMillis() + MAX_TIME;
 
-        // setting up root for first time
-        if (move_count < 3)
+        List<Future<?>> searches = new ArrayList<Future<?>>(helpers.length);
+        if (shared_tree)
         {
-            root = new Node(board, null, null);
-            root.populateChildren();
+            // shared tree search: each helper walks a copy of our board through our tree on the pool while this thread does too
+            prepare(board);
+            for (final Agent22704805 helper : helpers)
+            {
+                helper.search_board = cloneBoard(search_board);
+                helper.undo_count = 0;
+                searches.add(pool().submit(new Runnable()
+                {
+                    public void run() { helper.run(root, deadline); }
+                }));
+            }
+            run(root, deadline);
         }
-        // move root using last 2 moves
         else
         {
-            for (int i = 2; i > 0; i--)
+            // root parallel search: each helper searches its own tree on the pool while this thread searches ours
+            for (final Agent22704805 helper : helpers)
             {
-                Position[] move = board.getMove(move_count - i);
-                ArrayList<Position> move_arr = new ArrayList<Position>();
-                move_arr.add(move[0]); move_arr.add(move[1]);
-                if (!root.has_populated_children) root.populateChildren();
-                root = root.move_node_map.get(move_arr);
-                // For some reason one of the last 2 moves is not recognised, thus start again with an empty game tree
-                if (root == null)
+                searches.add(pool().submit(new Runnable()
                 {
-                    root = new Node(board, null, null);
-                    break;
-                }
+                    public void run() { helper.search(board, deadline); }
+                }));
+            }
+            search(board, deadline);
+        }
+        for (Future<?> search : searches)
+        {
+            try
+            {
+                search.get();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a parallel search", e);
             }
+            catch (ExecutionException e) { throw new IllegalStateException("A parallel search failed", e.getCause()); }
+        }
+
+        int move = selectBestMove();
+        advance(move);
+        if (!shared_tree) for (Agent22704805 helper : helpers) helper.advance(move);
+        // a shared tree stops growing when full rather than being pruned during the search, so make room for the next one
+        else if (node_count > max_nodes * PRUNE_TO) prune((int) (max_nodes * PRUNE_TO));
+        return Move.toPositions(move);
+    }
+
+    /**
+     * Runs Monte Carlo Tree Search from the position of a board until a deadline,
+     * reusing the tree from earlier moves if it has followed the game to this position
+     * @param board board to search from, which is not changed
+     * @param deadline time to stop searching, as given by System.currentTimeMillis
+     */
+    private void search(Board board, long deadline)
+    {
+        prepare(board);
+        run(root, deadline);
+    }
 
-            if (!root.has_populated_children) root.populateChildren();
+    /**
+     * Sets up root and search_board for a search from the position of a board,
+     * reusing the tree from earlier moves if it has followed the game to this position
+     * @param board board to search from, which is not changed
+     */
+    private void prepare(Board board)
+    {
+        int move_count = board.getMoveCount();
+
+        // onMove has normally advanced root through the moves since our last turn; replay any it missed from the history
+        if (root != null && 0 <= root_moves && root_moves <= move_count)
+        {
+            for (int i = root_moves; i < move_count && root != null; i++) advance(Move.fromPositions(board.getMove(i)));
         }
+        // the tree is only reused if it has reached exactly this position, otherwise start again with an empty game tree
+        boolean reuse = root != null && root_moves == move_count && search_board.getKey() == board.getKey();
 
-        MAX_TIME = board.getTimeLeft(root.colour)/25; // anytime algorithm, limit set to 1/25th of time left
-        // Monte Carlo Tree Search
-        long current_time = System.currentTimeMillis();
-        while (System.currentTimeMillis() - current_time < MAX_TIME)
+        search_board = cloneBoard(board);
+        search_board.setDrawRule(ROLLOUT_REPETITIONS, ROLLOUT_QUIET_MOVES);
+        search_board.setAdjudicator(new MoveLimitAdjudicator(board.getMoveCount() + ROLLOUT_MOVES, ROLLOUT_LEAD));
+        undo_count = 0;
+        if (!reuse)
         {
+            root = new Node(board.getTurn(), null, 0);
+            node_count = 1;
+        }
+        root_moves = move_count;
+        if (!root.has_populated_children) root.populateChildren(search_board, move_buffer);
+    }
+
+    /**
+     * Runs Monte Carlo Tree Search until a deadline, from a root whose position search_board is in.
+     * In a shared tree the root may belong to another agent, whose tree this agent's thread searches alongside its own
+     * @param root the root of the tree to search
+     * @param deadline time to stop searching, as given by System.currentTimeMillis
+     */
+    private void run(Node root, long deadline)
+    {
+        while (System.currentTimeMillis() < deadline)
+        {
+            if (shared_tree) VISITS.incrementAndGet(root);
             Node child = selectChild(root);
-            Colour winner = simulateGame(child);
+            Colour winner = simulateGame(search_board);
             backPropagate(child, root, winner);
+            rewind(search_board, 0);
+            if (!shared_tree && node_count > max_nodes) prune((int) (max_nodes * PRUNE_TO));
+        }
+    }
+
+    /**
+     * After time limit reached, select the move whose child of root has the highest win percentage,
+     * adding up the visits and wins for the same move in the helpers' trees when they have their own
+     * @return the packed move
+     */
+    private int selectBestMove()
+    {
+        if (helpers.length == 0 || shared_tree) return selectBestNode(root).last_move;
+        double max = -1;
+        int best_move = root.children[0].last_move;
+
+        for (int i = 0; i < root.num_children; i++)
+        {
+            Node node = root.children[i];
+            long visits = node.num_visits, wins = node.num_wins;
+            for (Agent22704805 helper : helpers)
+            {
+                Node other = helper.root.getChild(node.last_move);
+                if (other == null) continue;
+                visits += other.num_visits;
+                wins += other.num_wins;
+            }
+            double win_percentage = ((double) wins)/((double) visits);
+            if (win_percentage > max)
+            {
+                max = win_percentage;
+                best_move = node.last_move;
+            }
         }
 
-        root = selectBestNode(root);
-        return root.last_move;
+        return best_move;
     }
 
     /**
-     * Recursively select child node using Upper Confidence Bound for Trees algorithm until a leaf node reached
+     * @return the pool the helpers search on, started when first needed
+     */
+    private ExecutorService pool()
+    {
+        if (pool == null)
+        {
+            pool = Executors.newFixedThreadPool(helpers.length, new ThreadFactory()
+            {
+                public Thread newThread(Runnable search)
+                {
+                    Thread thread = new Thread(search, "Agent22704805 search");
+                    thread.setDaemon(true); // never keeps a finished tournament running
+                    return thread;
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * Moves root to the child reached by a move, playing it on search_board, or clears root if there is no such child
+     * @param move packed move that was played in the game
+     */
+    private void advance(int move)
+    {
+        if (!root.has_populated_children) root.populateChildren(search_board, move_buffer);
+        Node child = root.getChild(move);
+        if (child == null)
+        {
+            root = null;
+            return;
+        }
+        play(search_board, child.last_move);
+        undo_count = 0;
+        promote(child);
+        root_moves++;
+    }
+
+    /**
+     * Makes a child of root the new root, cutting it off from its parent so the rest of the old tree can be collected
+     * @param child the new root
+     */
+    private void promote(Node child)
+    {
+        child.parent = null;
+        root = child;
+        node_count = countNodes(child);
+    }
+
+    /**
+     * Counts nodes added to the tree, which threads sharing the tree may do at the same time
+     * @param count number of nodes added
+     */
+    private synchronized void addNodes(int count)
+    {
+        node_count += count;
+    }
+
+    /**
+     * @param node root of a subtree
+     * @return number of nodes in the subtree, including node
+     */
+    private static int countNodes(Node node)
+    {
+        int count = 1;
+        for (int i = 0; i < node.num_children; i++) count += countNodes(node.children[i]);
+        return count;
+    }
+
+    /**
+     * Prunes the least visited branches of the tree, forgetting the children of their nodes, until it has at most target nodes.
+     * A pruned node keeps its own statistics, and its children are found again if the search returns to it.
+     * @param target number of nodes to prune the tree down to
+     */
+    private void prune(int target)
+    {
+        // every node with children other than root, found breadth first
+        ArrayList<Node> parents = new ArrayList<Node>();
+        for (int i = 0; i < root.num_children; i++) if (root.children[i].num_children > 0) parents.add(root.children[i]);
+        for (int i = 0; i < parents.size(); i++)
+        {
+            Node node = parents.get(i);
+            for (int j = 0; j < node.num_children; j++) if (node.children[j].num_children > 0) parents.add(node.children[j]);
+        }
+        // a node never has more visits than its parent, so taking the least visited first frees the deepest branches first
+        Collections.sort(parents, new Comparator<Node>()
+        {
+            public int compare(Node a, Node b) { return Integer.compare(a.num_visits, b.num_visits); }
+        });
+        int excess = node_count - target, threshold = -1;
+        for (int i = 0; i < parents.size() && excess > 0; i++)
+        {
+            threshold = parents.get(i).num_visits;
+            excess -= parents.get(i).num_children;
+        }
+        for (int i = 0; i < root.num_children; i++) collapse(root.children[i], threshold);
+    }
+
+    /**
+     * Forgets the children of every node in a subtree with at most threshold visits, keeping node_count up to date
+     * @param node root of the subtree
+     * @param threshold most visits a node can have for its children to be forgotten
+     */
+    private void collapse(Node node, int threshold)
+    {
+        if (node.num_children == 0) return;
+        if (node.num_visits > threshold)
+        {
+            for (int i = 0; i < node.num_children; i++) collapse(node.children[i], threshold);
+            return;
+        }
+        node_count -= countNodes(node) - 1;
+        node.children = null;
+        node.child_moves = null;
+        node.num_children = 0;
+        node.has_populated_children = false;
+    }
+
+    /**
+     * Forgets any tree from a previous game
+     * @param colour colour played in this game
+     * @param board the board the game starts from
+     */
+    public void onGameStart(Colour colour, Board board)
+    {
+        root = null;
+        root_moves = -1;
+        node_count = 0;
+        moves_seen = board.getMoveCount();
+        for (Agent22704805 helper : helpers) helper.onGameStart(colour, board);
+    }
+
+    /**
+     * Advances root through the other players' moves as they are played, so playMove can reuse the subtree
+     * without reading the moves back from the board. Our own moves were already followed by playMove.
+     * @param start start position of the move
+     * @param end end position of the move
+     * @param colour colour of the player who moved
+     */
+    public void onMove(Position start, Position end, Colour colour)
+    {
+        for (Agent22704805 helper : helpers) helper.onMove(start, end, colour);
+        moves_seen++;
+        if (root == null || root_moves >= moves_seen) return;
+        if (root_moves < moves_seen - 1) // missed a move, so the tree no longer follows the game
+        {
+            root = null;
+            return;
+        }
+        advance(Move.encode(start, end)); // if the move is not found, playMove starts a new tree
+    }
+
+    /**
+     * Stops the threads of any parallel search, which are started again if another game is played
+     * @param board the final board
+     * @param scores the scores for blue, green and red
+     */
+    public void onGameEnd(Board board, int[] scores)
+    {
+        if (pool != null) pool.shutdown();
+        pool = null;
+        super.onGameEnd(board, scores);
+    }
+
+    /**
+     * Recursively select child node using Upper Confidence Bound for Trees algorithm until a leaf node reached.
+     * The moves leading to the selected node are played on search_board, which is left at that node.
+     * In a shared tree, a visit to each node on the way is counted straight away, as a virtual loss until the result is known,
+     * and once the tree is full its leaves are not expanded any further
      * @param current_node node to start search from
      * @return an unvisited child node of the leaf node
      */
@@ -79,63 +432,96 @@ public class Agent22704805 extends Agent {
         while (true)
         {
             double max = -1;
-            ArrayList<Position> best_child_key = null;
-            Set<ArrayList<Position>> keys = current_node.move_node_map.keySet();
+            Node best_child = null;
 
-            for (ArrayList<Position> move: keys)
+            for (int i = 0; i < current_node.num_children; i++)
             {
-                Node child = current_node.move_node_map.get(move);
-                if (child.num_visits == 0) return child; // new unvisited node found
+                Node child = current_node.children[i];
+                // new unvisited node found, which in a shared tree this thread must claim before another does
+                if (child.num_visits == 0 && (!shared_tree || VISITS.compareAndSet(child, 0, 1)))
+                {
+                    play(search_board, child.last_move);
+                    return child;
+                }
 
                 // calculate UCB1 value for each child
-                double exploration = Math.sqrt(Math.log(current_node.num_visits)/child.num_visits);
-                double ucb1 = ((double) child.num_wins)/((double) child.num_visits) + TEMPERATURE*exploration; 
+                int visits = child.num_visits;
+                double exploration = Math.sqrt(Math.log(current_node.num_visits)/visits);
+                double ucb1 = ((double) child.num_wins)/((double) visits) + TEMPERATURE*exploration; 
                 if (ucb1 > max)
                 {
                     max = ucb1;
-                    best_child_key = move;
+                    best_child = child;
                 }
             }
 
-            current_node = current_node.move_node_map.get(best_child_key);
-            if (current_node.state.gameOver()) return current_node; // terminal state reached
-            if (!current_node.has_populated_children) current_node.populateChildren(); 
+            current_node = best_child;
+            if (shared_tree) VISITS.incrementAndGet(current_node);
+            play(search_board, current_node.last_move);
+            if (search_board.gameOver()) return current_node; // terminal state reached
+            if (!current_node.has_populated_children)
+            {
+                if (shared_tree && current_node.isFull()) return current_node; // roll out from here instead
+                current_node.populateChildren(search_board, move_buffer);
+            }
         }
     }
 
     /**
-     * Perform random rollout from node, by picking a random position and then 
-     * random move from the position each time
-     * @param start Node to start simulation from
+     * Perform random rollout from a position, by picking a random position and then 
+     * random move from the position each time. The moves are played on the given board
+     * and undone again before returning, so the board is left unchanged.
+     * @param current board to start simulation from
      * @return winner of rollout
      */
-    public Colour simulateGame(Node start)
+    public Colour simulateGame(Board current)
     {
-        Board current = cloneBoard(start.state);
-        ArrayList<Position[]> all_moves;
-        Random random_generator = new Random();
+        int start_depth = undo_count;
+        int num_moves;
         // keep making moves until game completes
         while (!current.gameOver())
         {
             do
             {
-                Object[] positions = current.getPositions(current.getTurn()).toArray();
-                int random_index = random_generator.nextInt(positions.length);
-                Position position = (Position) positions[random_index]; // random position found
-                all_moves = getLegalMovesForPosition(position, current);
+                Colour turn = current.getTurn();
+                int random_index = random_generator.nextInt(current.getPieceCount(turn));
+                Position position = current.getPiecePosition(turn, random_index); // random position found
+                num_moves = current.generateLegalMoves(position, move_buffer, 0);
             }
-            while (all_moves.isEmpty()); // this position has no legal moves, thus try again
+            while (num_moves == 0); // this position has no legal moves, thus try again
 
-            int random_index = random_generator.nextInt(all_moves.size());
-            Position[] move = all_moves.get(random_index); // random move chosen
-            try 
-            {
-                current.move(move[0], move[1]);
-            }
-            catch (Exception e) {} // errors already accounted for in getLegalMovesForPosition()
+            int random_index = random_generator.nextInt(num_moves);
+            play(current, move_buffer[random_index]); // random move chosen
+        }
+
+        Colour winner = current.getWinner();
+        rewind(current, start_depth);
+        return winner;
+    }
+
+    /**
+     * Plays a legal move on a board, recording how to undo it on undo_stack
+     * @param board board to play the move on
+     * @param move the packed move
+     */
+    private void play(Board board, int move)
+    {
+        if (undo_count == undo_stack.length) undo_stack = Arrays.copyOf(undo_stack, 2 * undo_count);
+        try
+        {
+            undo_stack[undo_count++] = board.makeMove(move);
         }
+        catch (ImpossiblePositionException e) { undo_count--; } // only legal moves are played
+    }
 
-        return current.getWinner();
+    /**
+     * Undoes moves on a board until undo_stack is back to the given depth
+     * @param board board the moves were played on
+     * @param depth number of moves to leave on undo_stack
+     */
+    private void rewind(Board board, int depth)
+    {
+        while (undo_count > depth) board.unmakeMove(undo_stack[--undo_count]);
     }
 
     /**
@@ -148,8 +534,16 @@ public class Agent22704805 extends Agent {
     {
         while (node != root.parent)
         {
-            node.num_visits++;
-            if (Colour.values()[(node.colour.ordinal() + 2) % 3] == winner) node.num_wins++;
+            boolean won = Colour.values()[(node.colour.ordinal() + 2) % 3] == winner;
+            if (shared_tree)
+            {
+                if (won) WINS.incrementAndGet(node); // the visit was already counted by selectChild
+            }
+            else
+            {
+                node.num_visits++;
+                if (won) node.num_wins++;
+            }
             node = node.parent; // move to parent and repeat
         }
     }
@@ -162,14 +556,12 @@ public class Agent22704805 extends Agent {
      */
     public Node selectBestNode(Node root)
     {
-        Iterator<ArrayList<Position>> iterator = root.move_node_map.keySet().iterator();
         double max = -1;
         Node best_node = null;
 
-        while (iterator.hasNext())
+        for (int i = 0; i < root.num_children; i++)
         {
-            ArrayList<Position> key = iterator.next();
-            Node node = root.move_node_map.get(key);
+            Node node = root.children[i];
             double win_percentage = ((double) node.num_wins)/((double) node.num_visits);
             if (win_percentage > max)
             {
@@ -189,80 +581,19 @@ public class Agent22704805 extends Agent {
      */
     public static ArrayList<Position[]> getLegalMovesForPosition(Position position, Board state)
     {
-        ArrayList<Position[]> moves = new ArrayList<Position[]>();
-        Piece piece = state.getPiece(position);
-        Direction[][] steps = piece.getType().getSteps();
-        int num_steps = piece.getType().getStepReps();
-        HashSet<ArrayList<Position>> list_of_moves = new HashSet<ArrayList<Position>>();
-            
-        if (num_steps == 1)
-        {
-            for (Direction[] step: steps)
-            {
-                try 
-                { 
-                    Position new_position = state.step(piece, step, position); 
-                    ArrayList<Position> new_move = new ArrayList<Position>(); 
-                    new_move.add(position); new_move.add(new_position);
-        
-                    if (!list_of_moves.contains(new_move) && state.isLegalMove(position, new_position))
-                    {
-                        list_of_moves.add(new_move);
-                        moves.add(new Position[] {position, new_position});
-                    }
-                }
-                catch (Exception e) {}
-            }
-        }
-
-        // only applies to Queen, Bishop and Rook
-        else 
-        {
-            for (Direction[] step: steps)
-            {
-                Position new_position = position;
-                boolean reverse = false;
-                for (int i = 0; i < num_steps; i++)
-                {
-                    try
-                    {
-                        new_position = state.step(piece, step, new_position, reverse);
-                        // another player's part of board has been entered
-                        if (new_position.getColour() != position.getColour()) reverse = true;
-                        ArrayList<Position> new_move = new ArrayList<Position>(); 
-                        new_move.add(position); new_move.add(new_position);
-
-                        // check that move has not already been added and that it is legal
-                        if (!list_of_moves.contains(new_move) && state.isLegalMove(position, new_position))
-                        {
-                            list_of_moves.add(new_move);
-                            moves.add(new Position[] {position, new_position});
-                        }
-                        else break;
-                    }
-                        
-                    catch (Exception e) {break;} // piece moved off board 
-                }
-            }
-        }
-        
+        int[] targets = new int[MAX_TARGETS];
+        int num_targets = state.generateLegalMoves(position, targets, 0);
+        ArrayList<Position[]> moves = new ArrayList<Position[]>(num_targets);
+        for (int i = 0; i < num_targets; i++) moves.add(Move.toPositions(targets[i]));
         return moves;
     }
 
     /**
-     * clones a Board instance
+     * clones a Board instance, which may be the read only snapshot given to playMove, into one that can be searched
     */
     public Board cloneBoard(Board board)
     {
-        try
-        {
-            return (Board) board.clone();
-        }
-    
-        catch (Exception e)
-        {
-            return null;
-        }
+        return board.mutableCopy();
     }
 
     public String toString() {
@@ -275,102 +606,69 @@ public class Agent22704805 extends Agent {
 
     private class Node {
 
-        public int num_visits;
-        public int num_wins;
-        // internal representation of ThreeChess game
-        public Board state;
+        // updated with VISITS and WINS when threads share the tree
+        public volatile int num_visits;
+        public volatile int num_wins;
         // represents current turn
         public final Colour colour;
         public Node parent;
-        // move that led to this node being created
-        public Position[] last_move; 
-        // maps a particular legal move to its resulting node
-        public HashMap<ArrayList<Position>, Node> move_node_map;
-        // true if all possible children have been added to move_node_map
-        public boolean has_populated_children;
-        // initial capacity of move node map
-        public static final int INITIAL_CAPACITY = 40;
+        // move that led to this node being created, packed as in threeChess.Move
+        public int last_move; 
+        // the legal moves from this node, and the nodes they lead to at the same index
+        public int[] child_moves;
+        public Node[] children;
+        public int num_children;
+        // true if all possible children have been added to children, set last so other threads see the children first
+        public volatile boolean has_populated_children;
     
-        public Node(Board state, Node parent, Position[] move)
+        public Node(Colour colour, Node parent, int move)
         {
-            this.state = state;
-            colour = state.getTurn();
+            this.colour = colour;
             this.parent = parent;
             has_populated_children = false;
             last_move = move;
-            move_node_map = new HashMap<>(INITIAL_CAPACITY);
         }
-    
+
         /**
-         * Adds a child to the move_node_map. A helper method for populateChildren()
-         * @param position position of piece before move
-         * @param new_position position of piece after move
-         * @throws Exception move is not legal
+         * Finds the child reached by a move
+         * @param move packed move, only its start and end positions are compared
+         * @return the child node, or null if there is no such child
          */
-        private void addChild(Position position, Position new_position) throws Exception
+        public Node getChild(int move)
         {
-            ArrayList<Position> new_move = new ArrayList<Position>(); 
-            new_move.add(position); new_move.add(new_position);
-            // checks that move has not already been considered and it is a legal move
-            if (!move_node_map.containsKey(new_move) && state.isLegalMove(position, new_position))
+            for (int i = 0; i < num_children; i++)
             {
-                Board new_state = cloneBoard(state);
-                new_state.move(position, new_position);
-                Node child = new Node(new_state, this, new Position[] {position, new_position});
-                move_node_map.put(new_move, child);
+                if (Move.sameSquares(child_moves[i], move)) return children[i];
             }
-            else throw new Exception();
+            return null;
         }
     
         /**
          * Examines all possible legal moves from current state and adds the corresponding Nodes to 
-         * move_node_map
+         * children. Children do not store a board; the search plays their moves on search_board.
+         * Threads sharing the tree may race to expand the same node, so only the first does and the rest wait for it.
+         * @param state the board positioned at this node
+         * @param buffer the calling search's buffer for generating moves
          */
-        public void populateChildren()
+        public synchronized void populateChildren(Board state, int[] buffer)
         {
+            if (has_populated_children) return;
+            num_children = state.generateLegalMoves(buffer);
+            child_moves = Arrays.copyOf(buffer, num_children);
+            children = new Node[num_children];
+            Colour child_colour = Colour.values()[(colour.ordinal() + 1) % 3];
+
+            for (int i = 0; i < num_children; i++) children[i] = new Node(child_colour, this, child_moves[i]);
+            addNodes(num_children);
             has_populated_children = true;
-            Set<Position> positions = state.getPositions(colour);
-    
-            for (Position position: positions)
-            {
-                Piece piece = state.getPiece(position);
-                Direction[][] steps = piece.getType().getSteps();
-                int num_steps = piece.getType().getStepReps();
-                
-                if (num_steps == 1)
-                {
-                    for (Direction[] step: steps)
-                    {
-                        try 
-                        { 
-                            Position new_position = state.step(piece, step, position); 
-                            addChild(position, new_position);
-                        }
-                        catch (Exception e) {} // if piece has moved off board
-                    }
-                }
-    
-                // only applies to Rook, Bishop and Queen
-                else 
-                {
-                    for (Direction[] step: steps)
-                    {
-                        Position new_position = position;
-                        boolean reverse = false; // when entering another player's part of the board, reverse the directions
-                        for (int i = 0; i < num_steps; i++)
-                        {
-                            try
-                            {
-                                new_position = state.step(piece, step, new_position, reverse);
-                                // another player's part of board entered 
-                                if (new_position.getColour() != position.getColour()) reverse = true;
-                                addChild(position, new_position);
-                            }
-                            catch (Exception e) {break;} // moved off board 
-                        }
-                    }
-                }
-            }
+        }
+
+        /**
+         * @return true if the tree this node belongs to has no room for more nodes
+         */
+        public boolean isFull()
+        {
+            return node_count >= max_nodes;
         }
     }
 }
\ No newline at end of file